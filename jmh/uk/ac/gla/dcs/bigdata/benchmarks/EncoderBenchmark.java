@@ -0,0 +1,174 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.ForeachFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.encoders.ExpressionEncoder;
+import org.apache.spark.sql.catalyst.expressions.UnsafeRow;
+
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineEncoders;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineKryoRegistrator;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/**
+ * Compares the bean and kryo encodings of the pipeline types: encode and decode
+ * throughput (objects per second) of the Dataset encoders, the average size of
+ * an encoded row, and the bytes written when the objects go through a shuffle.
+ * 
+ * Samples are built from the same inputs as AssessedExercise (BIGDATA_NEWS and
+ * BIGDATA_QUERIES), so the sizes reflect real articles. It is a plain main
+ * rather than a JMH benchmark, as the shuffle is measured through Spark, but is
+ * built with the jmh profile so that it does not ship in the application jar.
+ */
+public class EncoderBenchmark {
+
+	static final int ITERATIONS = 5; // measured passes over the samples, after one warm-up pass
+
+	public static void main(String[] args) throws Exception {
+
+		String queryFile = System.getenv("BIGDATA_QUERIES");
+		if (queryFile == null)
+			queryFile = "data/queries.list";
+		String newsFile = System.getenv("BIGDATA_NEWS");
+		if (newsFile == null)
+			newsFile = "data/TREC_Washington_Post_collection.v3.example.json";
+
+		String sparkMaster = System.getenv("SPARK_MASTER");
+		if (sparkMaster == null) {
+			System.setProperty("hadoop.home.dir", new File("resources/hadoop/").getAbsolutePath());
+			sparkMaster = "local[2]";
+		}
+
+		// Kryo serialization is always configured, the bean encoders do not use it
+		SparkConf conf = new SparkConf().setMaster(sparkMaster).setAppName("EncoderBenchmark")
+				.set("spark.serializer", KryoSerializer.class.getName())
+				.set("spark.kryo.registrator", PipelineKryoRegistrator.class.getName());
+		SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
+
+		// shuffle bytes written by all tasks
+		AtomicLong shuffleBytes = new AtomicLong();
+		spark.sparkContext().addSparkListener(new SparkListener() {
+			@Override
+			public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+				if (taskEnd.taskMetrics() != null)
+					shuffleBytes.addAndGet(taskEnd.taskMetrics().shuffleWriteMetrics().bytesWritten());
+			}
+		});
+
+		List<Query> queries = spark.read().text(queryFile).map(new QueryFormaterMap(), Encoders.bean(Query.class))
+				.collectAsList();
+		List<NewsArticle> news = spark.read().text(newsFile)
+				.map(new NewsFormaterMap(), Encoders.bean(NewsArticle.class)).collectAsList();
+
+		// the intermediate objects of the pipeline, built the same way as in rankDocuments
+		Broadcast<TermDictionary> termDictionary = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(TermDictionary.fromQueries(queries));
+		ArticleInfoFlatMap compactInfo = new ArticleInfoFlatMap(termDictionary);
+		ArticleInfoFlatMap fullInfo = new ArticleInfoFlatMap();
+
+		List<NewsArticleInfo> articleInfos = new ArrayList<NewsArticleInfo>();
+		List<ArticleTermFreqDict> termDicts = new ArrayList<ArticleTermFreqDict>();
+		List<DocumentRanking> rankings = new ArrayList<DocumentRanking>();
+		List<QueryRanking> queryRankings = new ArrayList<QueryRanking>();
+		for (NewsArticle article : news) {
+			Iterator<NewsArticleInfo> info = compactInfo.call(article);
+			if (!info.hasNext())
+				continue;
+			articleInfos.add(info.next());
+			termDicts.add(new ArticleTermFreqDict(fullInfo.call(article).next().getTermDict()));
+
+			List<RankedResult> results = new ArrayList<RankedResult>(1);
+			results.add(new RankedResult(article.getId(), article, 1.0));
+			rankings.add(new DocumentRanking(queries.get(rankings.size() % queries.size()), results));
+
+			List<RankedDocument> documents = new ArrayList<RankedDocument>(1);
+			documents.add(new RankedDocument(article.getId(), article.getTitle(), 1.0));
+			queryRankings.add(new QueryRanking(queryRankings.size() % queries.size(), documents));
+		}
+
+		System.out.println(String.format("%-20s %-5s %14s %14s %12s %14s", "type", "enc", "encode obj/s",
+				"decode obj/s", "row bytes", "shuffle bytes"));
+		for (String encoding : new String[] { PipelineEncoders.BEAN, PipelineEncoders.KRYO }) {
+			measure(spark, shuffleBytes, NewsArticleInfo.class, articleInfos, encoding);
+			measure(spark, shuffleBytes, ArticleTermFreqDict.class, termDicts, encoding);
+			measure(spark, shuffleBytes, DocumentRanking.class, rankings, encoding);
+			measure(spark, shuffleBytes, QueryRanking.class, queryRankings, encoding);
+			measure(spark, shuffleBytes, Query.class, queries, encoding);
+		}
+
+		spark.close();
+	}
+
+	static <T> void measure(SparkSession spark, AtomicLong shuffleBytes, Class<T> type, List<T> samples,
+			String encoding) throws TimeoutException {
+		ExpressionEncoder<T> encoder = (ExpressionEncoder<T>) PipelineEncoders.forClass(type, encoding);
+		ExpressionEncoder.Serializer<T> serializer = encoder.createSerializer();
+		ExpressionEncoder.Deserializer<T> deserializer = encoder
+				.resolveAndBind(encoder.resolveAndBind$default$1(), encoder.resolveAndBind$default$2())
+				.createDeserializer();
+
+		// encode once to get the rows to decode and their size
+		List<InternalRow> rows = new ArrayList<InternalRow>(samples.size());
+		long rowBytes = 0;
+		for (T sample : samples) {
+			InternalRow row = serializer.apply(sample).copy();
+			rowBytes += ((UnsafeRow) row).getSizeInBytes();
+			rows.add(row);
+		}
+
+		long encodeNanos = 0, decodeNanos = 0;
+		for (int iteration = 0; iteration <= ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			for (T sample : samples)
+				serializer.apply(sample);
+			long encoded = System.nanoTime();
+			for (InternalRow row : rows)
+				deserializer.apply(row);
+			long decoded = System.nanoTime();
+
+			// the first pass is a warm-up
+			if (iteration > 0) {
+				encodeNanos += encoded - start;
+				decodeNanos += decoded - encoded;
+			}
+		}
+
+		// bytes written when the Dataset is shuffled
+		long shuffleBefore = shuffleBytes.get();
+		spark.createDataset(samples, encoder).repartition(8).foreach((ForeachFunction<T>) (sample -> {
+		}));
+		PipelineMetrics.awaitListeners(spark.sparkContext());
+		long shuffled = shuffleBytes.get() - shuffleBefore;
+
+		double objects = (double) samples.size() * ITERATIONS;
+		System.out.println(String.format("%-20s %-5s %14.0f %14.0f %12d %14d", type.getSimpleName(), encoding,
+				objects / (encodeNanos / 1e9), objects / (decodeNanos / 1e9), rowBytes / Math.max(1, samples.size()),
+				shuffled));
+	}
+}
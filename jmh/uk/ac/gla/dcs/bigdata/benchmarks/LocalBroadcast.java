@@ -0,0 +1,35 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import org.apache.spark.broadcast.Broadcast;
+
+import scala.reflect.ClassTag$;
+
+/**
+ * Broadcast holding its value locally, so that the Spark functions can be
+ * called directly in a benchmark without a SparkContext.
+ */
+public class LocalBroadcast<T> extends Broadcast<T> {
+
+	private static final long serialVersionUID = 4480259203612869733L;
+
+	private final T value;
+
+	@SuppressWarnings("unchecked")
+	public LocalBroadcast(T value) {
+		super(0, ClassTag$.MODULE$.apply(Object.class));
+		this.value = value;
+	}
+
+	@Override
+	public T getValue() {
+		return value;
+	}
+
+	@Override
+	public void doUnpersist(boolean blocking) {
+	}
+
+	@Override
+	public void doDestroy(boolean blocking) {
+	}
+}
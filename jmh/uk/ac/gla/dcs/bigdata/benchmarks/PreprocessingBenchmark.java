@@ -0,0 +1,71 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedutilities.TextPreProcessor;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.SharedTextPreProcessor;
+
+/**
+ * Text pre-processing: TextPreProcessor.process and its cached counterpart
+ * SharedTextPreProcessor.process on paragraphs of the sample, and
+ * ArticleInfoFlatMap.call on the sample articles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessingBenchmark {
+
+	TextPreProcessor processor;
+	ArticleInfoFlatMap articleInfoMap;
+
+	@Setup(Level.Trial)
+	public void functions(SampleCollection sample) {
+		processor = new TextPreProcessor();
+		articleInfoMap = new ArticleInfoFlatMap(SampleCollection.broadcast(sample.dictionary));
+	}
+
+	int nextParagraph;
+	int nextArticle;
+
+	@Benchmark
+	public Object textPreProcessor(SampleCollection sample) {
+		return processor.process(paragraph(sample));
+	}
+
+	@Benchmark
+	public Object sharedTextPreProcessor(SampleCollection sample) {
+		return SharedTextPreProcessor.get().process(paragraph(sample));
+	}
+
+	@Benchmark
+	public void articleInfoFlatMap(SampleCollection sample, Blackhole blackhole) throws Exception {
+		int i = nextArticle;
+		nextArticle = i + 1 == sample.news.size() ? 0 : i + 1;
+		NewsArticle article = sample.news.get(i);
+		articleInfoMap.call(article).forEachRemaining(blackhole::consume);
+	}
+
+	private String paragraph(SampleCollection sample) {
+		int i = nextParagraph;
+		nextParagraph = i + 1 == sample.paragraphs.size() ? 0 : i + 1;
+		return sample.paragraphs.get(i);
+	}
+}
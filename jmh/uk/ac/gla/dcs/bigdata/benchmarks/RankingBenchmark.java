@@ -0,0 +1,67 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.gla.dcs.bigdata.providedutilities.TextDistanceCalculator;
+import uk.ac.gla.dcs.bigdata.studentfunctions.DocumentRankingReducer;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+
+/**
+ * Ranking: TextDistanceCalculator.similarity on pairs of sample titles, the
+ * merge of the partial corpus statistics with CorpusTermStatistics.mergeWith,
+ * and DocumentRankingReducer.call folding the scored sample articles of every
+ * query into its top 10, as reduceByKey over the QueryPartitioner does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+
+	int nextTitle;
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double similarity(SampleCollection sample) {
+		int i = nextTitle;
+		nextTitle = i + 2 >= sample.titles.size() ? 0 : i + 1;
+		return TextDistanceCalculator.similarity(sample.titles.get(i), sample.titles.get(i + 1));
+	}
+
+	@Benchmark
+	public CorpusTermStatistics mergeWith(SampleCollection sample) {
+		CorpusTermStatistics merged = sample.partitionStatistics.get(0);
+		for (int i = 1; i < sample.partitionStatistics.size(); i++)
+			merged = merged.mergeWith(sample.partitionStatistics.get(i));
+		return merged;
+	}
+
+	@Benchmark
+	public void documentRankingReducer(SampleCollection sample, Blackhole blackhole) throws Exception {
+		DocumentRankingReducer reducer = new DocumentRankingReducer();
+		for (Map.Entry<Integer, List<QueryRanking>> query : sample.rankings.entrySet()) {
+			QueryRanking top10 = new QueryRanking(query.getKey(), Collections.<RankedDocument>emptyList());
+			for (QueryRanking scored : query.getValue())
+				top10 = reducer.call(top10, scored);
+			blackhole.consume(reducer.select(top10));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.sql.RowFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.ContentItem;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArtcleDphFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.CorpusStatisticsMapPartitions;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+
+/**
+ * Benchmark inputs drawn from the sample collection (BIGDATA_NEWS, default the
+ * 5000 article example of the Washington Post collection) and the queries in
+ * BIGDATA_QUERIES. The articles are run through the same functions as the
+ * pipeline once, so that every benchmark works on the intermediate data its
+ * function sees in a real run.
+ */
+@State(Scope.Benchmark)
+public class SampleCollection {
+
+	@Param({ "1000" })
+	public int articles; // number of articles read from the collection
+
+	static final int PARTITION_SIZE = 100; // articles per partial corpus statistics
+
+	List<NewsArticle> news = new ArrayList<NewsArticle>();
+	List<Query> queries = new ArrayList<Query>();
+	List<String> paragraphs = new ArrayList<String>(); // first paragraph of every article
+	List<String> titles = new ArrayList<String>();
+
+	TermDictionary dictionary;
+	List<NewsArticleInfo> articleInfos = new ArrayList<NewsArticleInfo>();
+	List<CorpusTermStatistics> partitionStatistics = new ArrayList<CorpusTermStatistics>();
+	ArticleTermFreqDict corpusTermDict;
+	long totalDocsInCorpus;
+	long averageDocumentLengthInCorpus;
+
+	Map<Integer, List<QueryRanking>> rankings = new LinkedHashMap<Integer, List<QueryRanking>>(); // scored articles per query id
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		String newsFile = System.getenv("BIGDATA_NEWS");
+		if (newsFile == null)
+			newsFile = "data/TREC_Washington_Post_collection.v3.example.json";
+		String queryFile = System.getenv("BIGDATA_QUERIES");
+		if (queryFile == null)
+			queryFile = "data/queries.list";
+
+		NewsFormaterMap newsFormater = new NewsFormaterMap();
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(newsFile), StandardCharsets.UTF_8)) {
+			String line;
+			while (news.size() < articles && (line = reader.readLine()) != null) {
+				NewsArticle article = newsFormater.call(RowFactory.create(line));
+				news.add(article);
+				if (article.getTitle() != null)
+					titles.add(article.getTitle());
+				if (article.getContents() != null) {
+					for (ContentItem content : article.getContents()) {
+						if (content != null && "paragraph".equalsIgnoreCase(content.getSubtype())
+								&& content.getContent() != null) {
+							paragraphs.add(content.getContent());
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		QueryFormaterMap queryFormater = new QueryFormaterMap();
+		for (String line : Files.readAllLines(Paths.get(queryFile), StandardCharsets.UTF_8))
+			if (!line.trim().isEmpty())
+				queries.add(queryFormater.call(RowFactory.create(line)));
+		dictionary = TermDictionary.fromQueries(queries);
+
+		// compact article infos and corpus statistics, as in rankDocuments
+		ArticleInfoFlatMap infoMap = new ArticleInfoFlatMap(broadcast(dictionary));
+		for (NewsArticle article : news)
+			infoMap.call(article).forEachRemaining(articleInfos::add);
+
+		CorpusStatisticsMapPartitions statisticsMap = new CorpusStatisticsMapPartitions(broadcast(dictionary));
+		for (int start = 0; start < articleInfos.size(); start += PARTITION_SIZE) {
+			List<NewsArticleInfo> partition = articleInfos.subList(start, Math.min(start + PARTITION_SIZE, articleInfos.size()));
+			statisticsMap.call(partition.iterator()).forEachRemaining(partitionStatistics::add);
+		}
+		CorpusTermStatistics corpusStatistics = partitionStatistics.get(0);
+		for (int i = 1; i < partitionStatistics.size(); i++)
+			corpusStatistics = corpusStatistics.mergeWith(partitionStatistics.get(i));
+		corpusTermDict = corpusStatistics.toArticleTermFreqDict();
+		totalDocsInCorpus = corpusStatistics.getTotalDocsInCorpus();
+		averageDocumentLengthInCorpus = corpusStatistics.toCorpusStatistics().averageDocumentLengthInCorpus();
+
+		// scored articles, the input of the ranking
+		for (int queryId = 0; queryId < queries.size(); queryId++)
+			rankings.put(queryId, new ArrayList<QueryRanking>());
+		ArtcleDphFlatMap dphMap = newDphFlatMap();
+		for (NewsArticleInfo articleInfo : articleInfos) {
+			Iterator<QueryRanking> scored = dphMap.call(articleInfo);
+			while (scored.hasNext()) {
+				QueryRanking ranking = scored.next();
+				rankings.get(ranking.getQueryId()).add(ranking);
+			}
+		}
+	}
+
+	ArtcleDphFlatMap newDphFlatMap() {
+		return new ArtcleDphFlatMap(broadcast(queries), broadcast(corpusTermDict), broadcast(dictionary),
+				totalDocsInCorpus, averageDocumentLengthInCorpus);
+	}
+
+	static <T> LocalBroadcast<T> broadcast(T value) {
+		return new LocalBroadcast<T>(value);
+	}
+}
@@ -0,0 +1,129 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.gla.dcs.bigdata.providedutilities.DPHScorer;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArtcleDphFlatMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.BatchDPHScorer;
+
+/**
+ * DPH scoring: a single DPHScorer.getDPHScore call over the <article, query
+ * term> pairs of the sample, all pairs scored by DPHScorer and by
+ * BatchDPHScorer, and ArtcleDphFlatMap.call over all sample articles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+
+	// <article, query term> pairs with a non-zero term frequency
+	int[] termIds;
+	short[] termFrequencies;
+	int[] corpusTermFrequencies;
+	int[] documentLengths;
+
+	BatchDPHScorer batchScorer;
+	int[] batchTermFrequencies;
+	double[] batchScores;
+
+	@Setup(Level.Trial)
+	public void pairs(SampleCollection sample) {
+		TermDictionary dictionary = sample.dictionary;
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (NewsArticleInfo article : sample.articleInfos) {
+			TermFrequencyMap frequencies = article.getTermFrequencies();
+			for (int termId = 0; termId < dictionary.size(); termId++) {
+				if (frequencies.contains(termId))
+					pairs.add(new int[] { termId, frequencies.get(termId),
+							sample.corpusTermDict.getTermFreqdict().get(dictionary.getTerm(termId)).intValue(),
+							(int) article.getLengthOfDocument() });
+			}
+		}
+		termIds = new int[pairs.size()];
+		termFrequencies = new short[pairs.size()];
+		corpusTermFrequencies = new int[pairs.size()];
+		documentLengths = new int[pairs.size()];
+		for (int i = 0; i < pairs.size(); i++) {
+			termIds[i] = pairs.get(i)[0];
+			termFrequencies[i] = (short) pairs.get(i)[1];
+			corpusTermFrequencies[i] = pairs.get(i)[2];
+			documentLengths[i] = pairs.get(i)[3];
+		}
+
+		long[] corpusFrequencies = new long[dictionary.size()];
+		for (int termId = 0; termId < corpusFrequencies.length; termId++)
+			corpusFrequencies[termId] = sample.corpusTermDict.getTermFreqdict()
+					.getOrDefault(dictionary.getTerm(termId), (long) 0);
+		batchScorer = new BatchDPHScorer(corpusFrequencies, sample.averageDocumentLengthInCorpus,
+				sample.totalDocsInCorpus);
+		batchTermFrequencies = new int[termFrequencies.length];
+		for (int i = 0; i < termFrequencies.length; i++)
+			batchTermFrequencies[i] = termFrequencies[i];
+		batchScores = new double[termFrequencies.length];
+
+		// both scorers must agree before their timings are compared
+		batchScorer.score(termIds, batchTermFrequencies, documentLengths, batchScores, batchScores.length);
+		for (int i = 0; i < batchScores.length; i++) {
+			double expected = DPHScorer.getDPHScore(termFrequencies[i], corpusTermFrequencies[i], documentLengths[i],
+					sample.averageDocumentLengthInCorpus, sample.totalDocsInCorpus);
+			if (Math.abs(expected - batchScores[i]) > 1e-9 * Math.max(1d, Math.abs(expected))
+					&& !(Double.isNaN(expected) && Double.isNaN(batchScores[i])))
+				throw new IllegalStateException("BatchDPHScorer differs from DPHScorer at pair " + i + ": "
+						+ batchScores[i] + " instead of " + expected);
+		}
+	}
+
+	int next; // pair scored by the next invocation
+
+	@Benchmark
+	public double dphScore(SampleCollection sample) {
+		int i = next;
+		next = i + 1 == termFrequencies.length ? 0 : i + 1;
+		return DPHScorer.getDPHScore(termFrequencies[i], corpusTermFrequencies[i], documentLengths[i],
+				sample.averageDocumentLengthInCorpus, sample.totalDocsInCorpus);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void dphScorerPairs(SampleCollection sample, Blackhole blackhole) {
+		for (int i = 0; i < termFrequencies.length; i++)
+			blackhole.consume(DPHScorer.getDPHScore(termFrequencies[i], corpusTermFrequencies[i], documentLengths[i],
+					sample.averageDocumentLengthInCorpus, sample.totalDocsInCorpus));
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public double[] batchDphScorerPairs() {
+		batchScorer.score(termIds, batchTermFrequencies, documentLengths, batchScores, batchScores.length);
+		return batchScores;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void artcleDphFlatMap(SampleCollection sample, Blackhole blackhole) throws Exception {
+		ArtcleDphFlatMap dphMap = sample.newDphFlatMap();
+		for (NewsArticleInfo article : sample.articleInfos)
+			dphMap.call(article).forEachRemaining(blackhole::consume);
+	}
+}
@@ -1,15 +1,25 @@
 package uk.ac.gla.dcs.bigdata.apps;
 
+import static org.apache.spark.sql.functions.col;
+
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FilterFunction;
 import org.apache.spark.api.java.function.MapFunction;
 import org.apache.spark.api.java.function.ReduceFunction;
 import org.apache.spark.broadcast.Broadcast;
@@ -18,7 +28,6 @@ import org.apache.spark.sql.Encoders;
 
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
-import org.apache.spark.util.LongAccumulator;
 
 import scala.Tuple2;
 import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
@@ -26,11 +35,35 @@ import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
 import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
 import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
 import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleIdFilter;
 import uk.ac.gla.dcs.bigdata.studentfunctions.ArtcleDphFlatMap;
 import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.CorpusStatisticsMapPartitions;
 import uk.ac.gla.dcs.bigdata.studentfunctions.DocumentRankingReducer;
+import uk.ac.gla.dcs.bigdata.studentfunctions.NearDuplicateTitleFilter;
+import uk.ac.gla.dcs.bigdata.studentfunctions.NewsArticleParserFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.PartialTopKMapPartitions;
+import uk.ac.gla.dcs.bigdata.studentfunctions.PrunedDphMapPartitions;
+import uk.ac.gla.dcs.bigdata.studentfunctions.TitleBandFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.TitleBucketFlatMapGroups;
+import uk.ac.gla.dcs.bigdata.studentfunctions.TitleClusterMap;
 import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
 import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryTermIndex;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitleBand;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitlePair;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineEncoders;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+import uk.ac.gla.dcs.bigdata.studentutilities.QueryPartitioner;
+import uk.ac.gla.dcs.bigdata.studentutilities.ResultsWriter;
+import uk.ac.gla.dcs.bigdata.studentutilities.SharedTextPreProcessor;
+import uk.ac.gla.dcs.bigdata.studentutilities.TitleMinHash;
 
 /**
  * This is the main class where your Spark topology should be specified.
@@ -65,9 +98,18 @@ public class AssessedExercise {
 		// Create the Spark Configuration
 		SparkConf conf = new SparkConf().setMaster(sparkMasterDef).setAppName(sparkSessionName);
 
+		// Use Kryo for the pipeline types if selected through BIGDATA_ENCODER
+		PipelineEncoders.configure(conf);
+
+		// an invalid BIGDATA_TERM_CACHE_SIZE is reported here rather than by the first task
+		SharedTextPreProcessor.cacheSize();
+
 		// Create the spark session
 		SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
 
+		// counters and per-stage statistics of the run, written next to SPARK.DONE
+		PipelineMetrics.forContext(spark.sparkContext());
+
 		// Get the location of the input queries
 		String queryFile = System.getenv("BIGDATA_QUERIES");
 		if (queryFile == null)
@@ -79,26 +121,107 @@ public class AssessedExercise {
 			newsFile = "data/TREC_Washington_Post_collection.v3.example.json"; // default is a sample of 5000 news
 																				// articles
 
-		// Call the student's code
-		List<DocumentRanking> results = rankDocuments(spark, queryFile, newsFile);
-
-		// Close the spark session
-		spark.close();
+		// Select what the run should do: the default batch topology, building an
+		// inverted index of the news articles, or answering queries from that index
+		String mode = System.getenv("BIGDATA_MODE");
+		String indexDir = System.getenv("BIGDATA_INDEX");
+		if (indexDir == null)
+			indexDir = "index/";
+		String snapshotDir = System.getenv("BIGDATA_SNAPSHOT");
+		if (snapshotDir == null)
+			snapshotDir = "snapshot/";
+		String corpusDir = System.getenv("BIGDATA_CORPUS");
+		if (corpusDir == null)
+			corpusDir = "corpus/";
 
 		String out = System.getenv("BIGDATA_RESULTS");
 		String resultsDIR = "results/";
 		if (out != null)
 			resultsDIR = out;
 
+		List<DocumentRanking> results;
+		if ("index".equalsIgnoreCase(mode)) {
+			InvertedIndex.build(spark, newsFile, indexDir);
+			results = null;
+		} else if ("convert".equalsIgnoreCase(mode)) {
+			try {
+				int documents = BinaryCorpus.convert(spark, newsFile, corpusDir);
+				System.out.println("Binary corpus of " + documents + " documents");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			results = null;
+		} else if ("ingest".equalsIgnoreCase(mode)) {
+			try {
+				long version = CorpusSnapshot.ingest(spark, newsFile, snapshotDir);
+				System.out.println("Corpus snapshot at version " + version);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			results = null;
+		} else if ("serve".equalsIgnoreCase(mode)) {
+			// keeps the pre-processed corpus in memory and answers query batches until
+			// the end of the input
+			try {
+				new QueryServer(spark, newsFile).run(System.getenv("BIGDATA_SERVER_PORT"));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			results = null;
+		} else if ("stream".equalsIgnoreCase(mode)) {
+			// keeps the rankings of the queries current as news files are added to the
+			// watched directory
+			String streamDir = System.getenv("BIGDATA_STREAM_DIR");
+			if (streamDir == null)
+				streamDir = "stream/";
+			String trigger = System.getenv("BIGDATA_STREAM_TRIGGER");
+			if (trigger == null)
+				trigger = "10 seconds";
+			try {
+				new StreamingRanker(spark, queryFile, streamDir, resultsDIR).run(trigger);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			results = null;
+		} else if ("query".equalsIgnoreCase(mode)) {
+			results = InvertedIndex.rankDocuments(spark, queryFile, indexDir);
+		} else {
+			// Call the student's code
+			results = rankDocuments(spark, queryFile, newsFile);
+		}
+
+		// Collect the metrics before the listener bus stops
+		Map<String, Object> metricsReport = null;
+		try {
+			metricsReport = PipelineMetrics.forContext(spark.sparkContext()).report(spark.sparkContext(), start);
+		} catch (TimeoutException e) {
+			e.printStackTrace();
+		}
+
+		// Close the spark session
+		spark.close();
+
 		// Check if the code returned any results
-		if (results == null)
+		if ("index".equalsIgnoreCase(mode))
+			System.out.println("Inverted index written to " + new File(indexDir).getAbsolutePath());
+		else if ("ingest".equalsIgnoreCase(mode))
+			System.out.println("Corpus snapshot written to " + new File(snapshotDir).getAbsolutePath());
+		else if ("convert".equalsIgnoreCase(mode))
+			System.out.println("Binary corpus written to " + new File(corpusDir).getAbsolutePath());
+		else if ("serve".equalsIgnoreCase(mode))
+			System.err.println("Query server stopped");
+		else if ("stream".equalsIgnoreCase(mode))
+			System.out.println("Streaming stopped, rankings written to " + new File(resultsDIR).getAbsolutePath());
+		else if (results == null)
 			System.err
 					.println("Topology return no rankings, student code may not be implemented, skiping final write.");
 		else {
 
-			// Write the ranking for each query as a new file
-			for (DocumentRanking rankingForQuery : results) {
-				rankingForQuery.write(new File(resultsDIR).getAbsolutePath());
+			// Write the rankings, as a file per query and/or a single TREC run file
+			try {
+				ResultsWriter.fromEnvironment().write(results, new File(resultsDIR).getAbsoluteFile());
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
 		}
 
@@ -112,6 +235,13 @@ public class AssessedExercise {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		if (metricsReport != null) {
+			try {
+				PipelineMetrics.writeReport(metricsReport, new File(resultsDIR, "metrics.json"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		long end = System.currentTimeMillis();
 		long elapsedTime = end - start;
 		System.out.println("Execution Time Taken :" + elapsedTime);
@@ -119,73 +249,378 @@ public class AssessedExercise {
 
 	public static List<DocumentRanking> rankDocuments(SparkSession spark, String queryFile, String newsFile) {
 
-		// Load queries and news articles
+		// Load queries and news articles, the news location may also be a corpus
+		// snapshot written in ingest mode
+		boolean snapshot = CorpusSnapshot.isSnapshot(spark, newsFile);
+		// or a binary corpus written in convert mode, whose source news file is only
+		// read for the final results
+		boolean binary = !snapshot && BinaryCorpus.isCorpus(newsFile);
+		String jsonFile = newsFile;
+		if (binary) {
+			try {
+				jsonFile = BinaryCorpus.sourceFile(newsFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 		Dataset<Row> queriesjson = spark.read().text(queryFile);
-		Dataset<Row> newsjson = spark.read().text(newsFile); // read in files as string rows, one row per article
+		Dataset<Row> newsjson = snapshot ? null : spark.read().text(jsonFile); // read in files as string rows, one row per article
 
 		// Perform an initial conversion from Dataset<Row> to Query and NewsArticle Java
 		// objects
 
 		// this converts each row into a Query
-		Dataset<Query> queries = queriesjson.map(new QueryFormaterMap(), Encoders.bean(Query.class)); //
-
-		// this converts each row into a NewsArticle
-		Dataset<NewsArticle> news = newsjson.map(new NewsFormaterMap(), Encoders.bean(NewsArticle.class));
+		Dataset<Query> queries = queriesjson.map(new QueryFormaterMap(), PipelineEncoders.forClass(Query.class)); //
 
 		// ----------------------------------------------------------------
 		// Your Spark Topology should be defined here
 		// ----------------------------------------------------------------
 
-		// Created accumulator for calculating article length within the corpus in
-		// number of terms
-		LongAccumulator articleLengthAccumulator = spark.sparkContext().longAccumulator();
-
-		// Filter null title article and extract useful information from remain
-		Dataset<NewsArticleInfo> articleInfo = news.flatMap(new ArticleInfoFlatMap(articleLengthAccumulator),
-				Encoders.bean(NewsArticleInfo.class));
-		
-		// Number of documents in the corpus
-		long totalDocsInCorpus = articleInfo.count();
-		// The average document length in the corpus (in terms). 
-		// Get articleLengthAccumulator value correctly
-		long averageDocumentLengthInCorpus = articleLengthAccumulator.value() / totalDocsInCorpus;
-
-		// article term frequency within the corpus
-		ArticleTermFreqDict corpusTermDict = articleInfo
-				// get termFrequency dictionary for each article, wrapping Map<String, Long> in ArticleTermFreqDict class
-				.map((MapFunction<NewsArticleInfo, ArticleTermFreqDict>)(article -> new ArticleTermFreqDict(article.getTermDict())), Encoders.bean(ArticleTermFreqDict.class))
-				// merge all termFrequency dictionaries together which returns term-frequency of all articles within the corpus
-				.reduce((ReduceFunction<ArticleTermFreqDict>)((dict1, dict2) -> dict1.mergeWith(dict2)));
+		// convert Dataset<Query> into List<Query>
+		List<Query> queryList = queries.collectAsList();
+
+		// assign term ids to the vocabulary of all queries, only these terms are kept
+		// for each article and need corpus statistics
+		Broadcast<TermDictionary> broadcastTermIds = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(TermDictionary.fromQueries(queryList));
+
+		Dataset<NewsArticleInfo> articleInfo;
+		long totalDocsInCorpus;
+		long averageDocumentLengthInCorpus;
+		ArticleTermFreqDict corpusTermDict;
+		Map<String, double[]> termScoreLines = null; // for dynamic pruning, see rankArticles
+		if (snapshot) {
+			// the articles are already pre-processed and the corpus statistics stored
+			articleInfo = CorpusSnapshot.readArticles(spark, newsFile, broadcastTermIds,
+					PipelineEncoders.forClass(NewsArticleInfo.class));
+			CorpusStatistics statistics = CorpusSnapshot.statistics(spark, newsFile);
+			totalDocsInCorpus = statistics.getTotalDocsInCorpus();
+			averageDocumentLengthInCorpus = statistics.averageDocumentLengthInCorpus();
+			Set<String> queryTerms = new HashSet<String>();
+			for (Query query : queryList)
+				queryTerms.addAll(query.getQueryTerms());
+			corpusTermDict = CorpusSnapshot.readTermFrequencies(spark, newsFile, queryTerms);
+		} else {
+			if (binary) {
+				// the articles are already pre-processed, read from memory-mapped records
+				try {
+					articleInfo = BinaryCorpus.readArticles(spark, newsFile, broadcastTermIds,
+							PipelineEncoders.forClass(NewsArticleInfo.class));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				// this converts each row into a NewsArticle, reading only the id, title and first
+				// five paragraphs, the full articles are only bound for the final results
+				Dataset<NewsArticle> news = newsjson.flatMap(new NewsArticleParserFlatMap(PipelineMetrics.forContext(spark.sparkContext())),
+						PipelineEncoders.forClass(NewsArticle.class));
+
+				// Filter null title article and extract useful information from remain
+				articleInfo = news.flatMap(new ArticleInfoFlatMap(broadcastTermIds),
+						PipelineEncoders.forClass(NewsArticleInfo.class));
+			}
+			// The articles are scored after the statistics are known, so they are persisted
+			// rather than read and pre-processed a second time
+			articleInfo = articleInfo.persist(PipelineEncoders.storageLevel());
+
+			// number of documents, total document length and query term frequencies within
+			// the corpus, gathered in a single pass, with the score lines if they are used for pruning
+			boolean pruning = !"none".equalsIgnoreCase(System.getenv("BIGDATA_PRUNING"));
+			CorpusTermStatistics corpusStatistics = articleInfo
+					// one partial CorpusTermStatistics per partition
+					.mapPartitions(new CorpusStatisticsMapPartitions(broadcastTermIds, pruning), PipelineEncoders.forClass(CorpusTermStatistics.class))
+					// merge the partial statistics together which returns the statistics of the corpus
+					.reduce((ReduceFunction<CorpusTermStatistics>)((statistics1, statistics2) -> statistics1.mergeWith(statistics2)));
+
+			// Number of documents in the corpus
+			totalDocsInCorpus = corpusStatistics.getTotalDocsInCorpus();
+			// The average document length in the corpus (in terms)
+			averageDocumentLengthInCorpus = corpusStatistics.toCorpusStatistics().averageDocumentLengthInCorpus();
+			// query term frequency within the corpus
+			corpusTermDict = corpusStatistics.toArticleTermFreqDict();
+			termScoreLines = corpusStatistics.getTermScoreLines();
+		}
+
+		// optionally cluster the near-duplicate titles once, articles of different
+		// clusters are then not compared while ranking
+		Dataset<NewsArticleInfo> rankedInfo = articleInfo;
+		Broadcast<Map<String, Integer>> clusters = null;
+		List<QueryRanking> rankings;
+		try {
+			if ("lsh".equalsIgnoreCase(System.getenv("BIGDATA_DEDUP"))) {
+				clusters = JavaSparkContext.fromSparkContext(spark.sparkContext()).broadcast(clusterTitles(articleInfo));
+				rankedInfo = articleInfo.map(new TitleClusterMap(clusters), PipelineEncoders.forClass(NewsArticleInfo.class));
+			}
+
+			rankings = rankArticles(spark, rankedInfo, queryList, broadcastTermIds, corpusTermDict,
+					totalDocsInCorpus, averageDocumentLengthInCorpus, termScoreLines);
+		} finally {
+			articleInfo.unpersist();
+			if (clusters != null)
+				clusters.destroy();
+		}
+
+		// fetch the full NewsArticle for the final results only, the other articles are
+		// filtered out on their id before being converted
+		List<NewsArticle> resultArticles;
+		if (snapshot) {
+			resultArticles = CorpusSnapshot.readDocuments(spark, newsFile, rankedDocids(rankings));
+		} else {
+			Broadcast<Set<String>> resultDocids = JavaSparkContext.fromSparkContext(spark.sparkContext())
+					.broadcast(rankedDocids(rankings));
+			resultArticles = newsjson.filter(new ArticleIdFilter(resultDocids))
+					.map(new NewsFormaterMap(), PipelineEncoders.forClass(NewsArticle.class))
+					.collectAsList();
+		}
+
+		List<DocumentRanking> results = attachArticles(rankings, queryList, resultArticles);
+		for (DocumentRanking result : results) {
+			System.out.println(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Scores the given articles against every query with DPH and returns the top 10
+	 * (near-duplicate free) articles for each query. Shared by the batch topology
+	 * and the inverted index query mode. Only article ids, titles and scores are
+	 * moved through the ranking, see attachArticles for the final results.
+	 * 
+	 * Each partition only passes on a prefix of the candidates of a query (see
+	 * PartialTopKMapPartitions), which is not always enough once the partitions
+	 * are merged, so a query whose 10th article scores below a dropped candidate
+	 * is ranked again from all of its candidates.
+	 * 
+	 * @param spark
+	 * @param articleInfo                   - articles to score
+	 * @param queryList                     - queries to answer
+	 * @param termDictionary                - term ids of the query vocabulary
+	 * @param corpusTermDict                - term frequencies within the corpus
+	 * @param totalDocsInCorpus             - number of documents in the corpus
+	 * @param averageDocumentLengthInCorpus - average document length in the corpus
+	 * @return
+	 */
+	public static List<QueryRanking> rankArticles(SparkSession spark, Dataset<NewsArticleInfo> articleInfo,
+			List<Query> queryList, Broadcast<TermDictionary> termDictionary, ArticleTermFreqDict corpusTermDict,
+			long totalDocsInCorpus, long averageDocumentLengthInCorpus) {
+		return rankArticles(spark, articleInfo, queryList, termDictionary, corpusTermDict, totalDocsInCorpus,
+				averageDocumentLengthInCorpus, null);
+	}
+
+	/**
+	 * Same as above, with dynamic pruning when the score lines of the query terms
+	 * are given (see CorpusTermStatistics). Articles that cannot enter the top 10
+	 * of a partition for a query are not scored for it. Like the candidates a
+	 * partition drops, a pruned article could still be ranked once the partitions
+	 * are merged, so pruning is checked the same way: each ranking carries the
+	 * highest score that was pruned or dropped, and a query whose final 10th
+	 * article scores below it is ranked again from all of its candidates. The
+	 * rankings are thus those of exhaustive scoring, up to the order of articles
+	 * with equal scores.
+	 * 
+	 * @param spark
+	 * @param articleInfo                   - articles to score
+	 * @param queryList                     - queries to answer
+	 * @param termDictionary                - term ids of the query vocabulary
+	 * @param corpusTermDict                - term frequencies within the corpus
+	 * @param totalDocsInCorpus             - number of documents in the corpus
+	 * @param averageDocumentLengthInCorpus - average document length in the corpus
+	 * @param termScoreLines                - score lines of the query terms over
+	 *                                      articleInfo, null to score exhaustively
+	 * @return
+	 */
+	public static List<QueryRanking> rankArticles(SparkSession spark, Dataset<NewsArticleInfo> articleInfo,
+			List<Query> queryList, Broadcast<TermDictionary> termDictionary, ArticleTermFreqDict corpusTermDict,
+			long totalDocsInCorpus, long averageDocumentLengthInCorpus, Map<String, double[]> termScoreLines) {
+		return rankArticles(spark, articleInfo, queryList, termDictionary, corpusTermDict, totalDocsInCorpus,
+				averageDocumentLengthInCorpus, termScoreLines, false);
+	}
+
+	// complete: every scored candidate of a query is merged, without any prefix or pruning
+	private static List<QueryRanking> rankArticles(SparkSession spark, Dataset<NewsArticleInfo> articleInfo,
+			List<Query> queryList, Broadcast<TermDictionary> termDictionary, ArticleTermFreqDict corpusTermDict,
+			long totalDocsInCorpus, long averageDocumentLengthInCorpus, Map<String, double[]> termScoreLines,
+			boolean complete) {
+
+		PipelineMetrics metrics = PipelineMetrics.forContext(spark.sparkContext());
+		DocumentRankingReducer reducer = new DocumentRankingReducer(metrics);
 
 		// sending ArticleTermFreqDict to ArtcleDphFlatMap function efficiently through
 		// broadcasting
 		Broadcast<ArticleTermFreqDict> broadcastTermDict = JavaSparkContext.fromSparkContext(spark.sparkContext())
 				.broadcast(corpusTermDict);
 
-		// convert Dataset<Query> into List<Query>
-		List<Query> queryList = queries.collectAsList();
-
 		// sending list of queries into ArtcleDphFlatMap function efficiently through
 		// broadcasting
 		Broadcast<List<Query>> broadcastQuery = JavaSparkContext.fromSparkContext(spark.sparkContext())
 				.broadcast(queryList);
 
-		// Got query result
-		List<DocumentRanking> results = articleInfo
-				// calculate DPH value for query-article pair: Dataset<DocumentRanking>
-				.flatMap(new ArtcleDphFlatMap(broadcastQuery, broadcastTermDict, totalDocsInCorpus,
-						averageDocumentLengthInCorpus), Encoders.bean(DocumentRanking.class))
-				// group by query: KeyValueGroupedDataset<Query, DocumentRanking>
-				.groupByKey((MapFunction<DocumentRanking, Query>)(ranking -> ranking.getQuery()), Encoders.bean(Query.class))
-				// ranking article by dph and merging rankings together for each query: Dataset<Tuple2<Query, DocumentRanking>>
-				.reduceGroups(new DocumentRankingReducer())
-				// map to DocumentRanking: Dataset<DocumentRanking>
-				.map((MapFunction<Tuple2<Query, DocumentRanking>, DocumentRanking>)(tuple -> tuple._2), Encoders.bean(DocumentRanking.class))
-				// transform to list: List<DocumentRanking>
+		// term ids of each query and the queries of each term id, built once on the
+		// driver so that an article only visits the queries sharing one of its terms
+		Broadcast<QueryTermIndex> broadcastIndex = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(QueryTermIndex.build(queryList, termDictionary.getValue()));
+
+		Broadcast<Map<String, double[]>> broadcastLines = null; // score lines, when pruning
+
+		// the broadcasts are only used by the jobs below, release them once ranked as
+		// a long-lived caller (QueryServer, StreamingRanker) ranks many times
+		try {
+			Dataset<QueryRanking> partialRankings;
+			if (complete) {
+				partialRankings = articleInfo.flatMap(new ArtcleDphFlatMap(broadcastQuery, broadcastIndex, broadcastTermDict,
+						termDictionary, totalDocsInCorpus, averageDocumentLengthInCorpus, metrics),
+						PipelineEncoders.forClass(QueryRanking.class));
+			} else if (termScoreLines == null) {
+				partialRankings = articleInfo
+						// calculate DPH value for query-article pair: Dataset<QueryRanking>
+						.flatMap(new ArtcleDphFlatMap(broadcastQuery, broadcastIndex, broadcastTermDict, termDictionary,
+								totalDocsInCorpus, averageDocumentLengthInCorpus, metrics),
+								PipelineEncoders.forClass(QueryRanking.class))
+						// keep only the top 10 candidates (and their near-duplicates) per query and partition before the shuffle
+						.mapPartitions(new PartialTopKMapPartitions(10, metrics), PipelineEncoders.forClass(QueryRanking.class));
+			} else {
+				broadcastLines = JavaSparkContext.fromSparkContext(spark.sparkContext())
+						.broadcast(termScoreLines);
+				// score only the query-article pairs that can enter the top 10, and keep the
+				// same candidates per query and partition as above
+				partialRankings = articleInfo.mapPartitions(new PrunedDphMapPartitions(broadcastQuery, broadcastIndex,
+						broadcastTermDict, termDictionary, broadcastLines, totalDocsInCorpus, averageDocumentLengthInCorpus,
+						10, metrics), PipelineEncoders.forClass(QueryRanking.class));
+			}
+
+			// queries are spread over the reducers by their expected number of candidates
+			QueryPartitioner partitioner = QueryPartitioner.balanced(queryList, corpusTermDict,
+					spark.sparkContext().defaultParallelism());
+
+			// Got query result
+			List<QueryRanking> rankings = new ArrayList<QueryRanking>(partialRankings.javaRDD()
+					// key by query id: JavaPairRDD<Integer, QueryRanking>
+					.mapToPair(ranking -> new Tuple2<Integer, QueryRanking>(ranking.getQueryId(), ranking))
+					// ranking article by dph and merging rankings together for each query, within each partition before the shuffle: JavaPairRDD<Integer, QueryRanking>
+					.reduceByKey(partitioner, complete ? reducer::union : reducer::call)
+					// map to QueryRanking, selecting the top 10 of queries with candidates in a single partition: JavaRDD<QueryRanking>
+					.map(tuple -> reducer.select(tuple._2))
+					// transform to list: List<QueryRanking>
+					.collect());
+
+			// an article dropped or pruned below the threshold of a query could still
+			// have been ranked if the 10th article of the query scores lower
+			List<Integer> unverified = new ArrayList<Integer>();
+			Set<Integer> unverifiedIds = new HashSet<Integer>();
+			for (QueryRanking ranking : rankings) {
+				List<RankedDocument> results = ranking.getResults();
+				double tenthScore = results.size() < 10 ? Double.NEGATIVE_INFINITY : results.get(9).getScore();
+				if (ranking.getThreshold() > tenthScore) {
+					unverified.add(ranking.getQueryId());
+					unverifiedIds.add(ranking.getQueryId());
+				}
+			}
+			if (!unverified.isEmpty()) {
+				List<Query> exhaustive = new ArrayList<Query>(unverified.size());
+				for (int queryId : unverified)
+					exhaustive.add(queryList.get(queryId));
+				rankings.removeIf(ranking -> unverifiedIds.contains(ranking.getQueryId()));
+				for (QueryRanking ranking : rankArticles(spark, articleInfo, exhaustive, termDictionary, corpusTermDict,
+						totalDocsInCorpus, averageDocumentLengthInCorpus, null, true)) {
+					// back from the ids within the exhaustive list
+					ranking.setQueryId(unverified.get(ranking.getQueryId()));
+					rankings.add(ranking);
+				}
+			}
+			return rankings;
+		} finally {
+			broadcastTermDict.destroy();
+			broadcastQuery.destroy();
+			broadcastIndex.destroy();
+			if (broadcastLines != null)
+				broadcastLines.destroy();
+		}
+	}
+
+	/**
+	 * Clusters the near-duplicate titles of the articles with MinHash and LSH (see
+	 * TitleMinHash). The buckets of articles sharing a band only hold article ids,
+	 * the candidate pairs they give are made distinct and joined with the titles,
+	 * so that each pair is compared once with TextDistanceCalculator. The verified
+	 * near-duplicate pairs are grouped into clusters on the driver.
+	 * 
+	 * @param articleInfo - articles to cluster, those without any query term are
+	 *                    skipped
+	 * @return the cluster id of every article with a near-duplicate
+	 */
+	public static Map<String, Integer> clusterTitles(Dataset<NewsArticleInfo> articleInfo) {
+		PipelineMetrics metrics = PipelineMetrics.forContext(articleInfo.sparkSession().sparkContext());
+
+		// the pairs are joined by column, so they are bean encoded whatever the configured encoding
+		Dataset<TitlePair> candidates = articleInfo
+				// one row per band of the title signature: Dataset<TitleBand>
+				.flatMap(new TitleBandFlatMap(), PipelineEncoders.forClass(TitleBand.class))
+				// group the articles sharing a band: KeyValueGroupedDataset<Long, TitleBand>
+				.groupByKey((MapFunction<TitleBand, Long>)(band -> band.getKey()), Encoders.LONG())
+				// the candidate pairs of each bucket: Dataset<TitlePair>
+				.flatMapGroups(new TitleBucketFlatMapGroups(), Encoders.bean(TitlePair.class))
+				// read the buckets in as many tasks as there are article partitions, so that the
+				// shuffle of the distinct is not written by every one of the shuffle partitions
+				.coalesce(articleInfo.rdd().getNumPartitions())
+				// each pair once, however many bands its articles share
+				.distinct();
+
+		// id and title of the clustered articles: Dataset<Row>
+		Dataset<Row> titles = articleInfo
+				.filter((FilterFunction<NewsArticleInfo>)(article -> TitleBandFlatMap.clustered(article)))
+				.map((MapFunction<NewsArticleInfo, Tuple2<String, String>>)(article -> new Tuple2<String, String>(article.getId(), article.getTitle())),
+						Encoders.tuple(Encoders.STRING(), Encoders.STRING()))
+				.toDF("id", "title");
+
+		List<TitlePair> pairs = candidates
+				// attach the title of both articles
+				.join(titles.toDF("docid1", "title1"), "docid1")
+				.join(titles.toDF("docid2", "title2"), "docid2")
+				// verify each candidate pair
+				.filter(new NearDuplicateTitleFilter(metrics))
+				.select(col("docid1"), col("docid2"))
+				.as(Encoders.bean(TitlePair.class))
+				// transform to list: List<TitlePair>
 				.collectAsList();
+		return TitleMinHash.clusters(pairs);
+	}
 
-		for (DocumentRanking result : results) {
-			System.out.println(result);
+	/**
+	 * @param rankings
+	 * @return ids of all articles within the rankings
+	 */
+	public static Set<String> rankedDocids(List<QueryRanking> rankings) {
+		Set<String> docids = new HashSet<String>();
+		for (QueryRanking ranking : rankings) {
+			for (RankedDocument document : ranking.getResults())
+				docids.add(document.getDocid());
+		}
+		return docids;
+	}
+
+	/**
+	 * Converts the lightweight rankings into DocumentRankings, attaching the Query
+	 * and the full NewsArticle of every ranked article.
+	 * 
+	 * @param rankings  - top 10 articles for each query
+	 * @param queryList - queries the rankings were calculated for, indexed by
+	 *                  their query id
+	 * @param articles  - the articles of the rankings (see rankedDocids)
+	 * @return
+	 */
+	public static List<DocumentRanking> attachArticles(List<QueryRanking> rankings, List<Query> queryList,
+			List<NewsArticle> articles) {
+		Map<String, NewsArticle> articlesById = new HashMap<String, NewsArticle>();
+		for (NewsArticle article : articles)
+			articlesById.put(article.getId(), article);
+
+		List<DocumentRanking> results = new ArrayList<DocumentRanking>(rankings.size());
+		for (QueryRanking ranking : rankings) {
+			List<RankedResult> rankedResults = new ArrayList<RankedResult>(ranking.getResults().size());
+			for (RankedDocument document : ranking.getResults())
+				rankedResults.add(new RankedResult(document.getDocid(), articlesById.get(document.getDocid()),
+						document.getScore()));
+			results.add(new DocumentRanking(queryList.get(ranking.getQueryId()), rankedResults));
 		}
 		return results;
 	}
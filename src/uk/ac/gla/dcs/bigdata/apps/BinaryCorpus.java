@@ -0,0 +1,278 @@
+package uk.ac.gla.dcs.bigdata.apps;
+
+import static org.apache.spark.sql.functions.col;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.BinaryCorpusFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.NewsArticleParserFlatMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.DocumentRange;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+
+/**
+ * Pre-tokenized corpus in a binary format read through memory-mapped files, so
+ * that the articles are parsed and pre-processed once (BIGDATA_MODE=convert)
+ * and then read back without any text decoding. It is meant for local mode:
+ * the corpus directory has to be on a local file system visible to every
+ * executor.
+ *
+ * A corpus directory holds:
+ * <ul>
+ * <li>corpus.bin - a header (magic number, format version, number of
+ * documents, position of the offsets table), the document records, and the
+ * offsets table: the position of every record plus the end of the last one.
+ * A record holds the length of the document (in terms), the number of
+ * distinct terms, their term ids in ascending order, their frequencies, then
+ * the article id and title as UTF-8 bytes, each preceded by its length (-1 for
+ * a null id or title, which are kept as in the articles built from the Json).
+ * All numbers are big-endian.</li>
+ * <li>vocabulary.txt - the terms, one per line, the line number being the term
+ * id</li>
+ * <li>source.txt - the location of the news articles the corpus was converted
+ * from, read for the NewsArticles of the final results</li>
+ * </ul>
+ *
+ * AssessedExercise.rankDocuments accepts a corpus directory in place of the
+ * news file (BIGDATA_NEWS). The term ids of the records are translated to
+ * those of the query TermDictionary through a single array lookup, and the
+ * articles are the same NewsArticleInfo as those built from the Json.
+ */
+public class BinaryCorpus {
+
+	public static final String CORPUS = "corpus.bin";
+	public static final String VOCABULARY = "vocabulary.txt";
+	public static final String SOURCE = "source.txt";
+
+	public static final int MAGIC = 0x42444352;
+	public static final int VERSION = 1;
+	public static final int HEADER_LENGTH = 20; // magic, version, documents, offsets position
+
+	static final long RANGE_BYTES = 32L << 20; // target size of the records read by one task
+
+	/**
+	 * Parses and pre-processes the news articles and writes them as a binary
+	 * corpus. The records are written on the driver, in the order of the input.
+	 *
+	 * @param spark
+	 * @param newsFile  - location of the news articles: a file, directory or glob
+	 * @param corpusDir - directory of the corpus, created if needed
+	 * @return number of documents written
+	 * @throws IOException
+	 */
+	public static int convert(SparkSession spark, String newsFile, String corpusDir) throws IOException {
+		File directory = new File(corpusDir);
+		directory.mkdirs();
+
+		// the same articles as the batch topology, with the frequency of every term
+		Iterator<Row> articles = spark.read().text(newsFile)
+				.flatMap(new NewsArticleParserFlatMap(), Encoders.bean(NewsArticle.class))
+				.flatMap(new ArticleInfoFlatMap(), Encoders.bean(NewsArticleInfo.class))
+				.select(col("id"), col("title"), col("lengthOfDocument"), col("termDict"))
+				.toLocalIterator();
+
+		Map<String, Integer> vocabulary = new HashMap<String, Integer>();
+		List<String> terms = new ArrayList<String>();
+		long[] offsets = new long[1024];
+		int documents = 0;
+
+		File corpusFile = new File(directory, CORPUS);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(corpusFile), 1 << 16))) {
+			// header, the number of documents and the offsets position are set at the end
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(0);
+			out.writeLong(0L);
+			long position = HEADER_LENGTH;
+
+			int[] termIds = new int[64];
+			int[] frequencies = new int[64];
+			while (articles.hasNext()) {
+				Row article = articles.next();
+				Map<String, Long> termDict = article.getJavaMap(3);
+
+				int distinct = 0;
+				if (termIds.length < termDict.size()) {
+					termIds = new int[termDict.size()];
+					frequencies = new int[termDict.size()];
+				}
+				for (Map.Entry<String, Long> term : termDict.entrySet()) {
+					Integer termId = vocabulary.get(term.getKey());
+					if (termId == null) {
+						termId = terms.size();
+						vocabulary.put(term.getKey(), termId);
+						terms.add(term.getKey());
+					}
+					termIds[distinct++] = termId;
+				}
+				Arrays.sort(termIds, 0, distinct);
+				for (int i = 0; i < distinct; i++)
+					frequencies[i] = termDict.get(terms.get(termIds[i])).intValue();
+
+				if (documents + 1 >= offsets.length)
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				offsets[documents++] = position;
+
+				out.writeInt((int) article.getLong(2));
+				out.writeInt(distinct);
+				for (int i = 0; i < distinct; i++)
+					out.writeInt(termIds[i]);
+				for (int i = 0; i < distinct; i++)
+					out.writeInt(frequencies[i]);
+				position += 8 + 8L * distinct;
+				position += writeString(out, article.getString(0));
+				position += writeString(out, article.getString(1));
+			}
+
+			offsets[documents] = position;
+			for (int i = 0; i <= documents; i++)
+				out.writeLong(offsets[i]);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(corpusFile, "rw")) {
+			file.seek(8);
+			file.writeInt(documents);
+			file.writeLong(offsets[documents]);
+		}
+
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(directory, VOCABULARY)), StandardCharsets.UTF_8))) {
+			for (String term : terms) {
+				writer.write(term);
+				writer.write('\n');
+			}
+		}
+		Files.write(new File(directory, SOURCE).toPath(),
+				(newsFile.contains("://") ? newsFile : new File(newsFile).getAbsolutePath())
+						.getBytes(StandardCharsets.UTF_8));
+		return documents;
+	}
+
+	/**
+	 * Writes a string as its length followed by its UTF-8 bytes, or a length of -1
+	 * if it is null.
+	 * 
+	 * @param out
+	 * @param value
+	 * @return number of bytes written
+	 * @throws IOException
+	 */
+	private static int writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return 4;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return 4 + bytes.length;
+	}
+
+	/**
+	 * @param location - news file or corpus directory
+	 * @return whether the location is a binary corpus directory
+	 */
+	public static boolean isCorpus(String location) {
+		return new File(location, CORPUS).isFile();
+	}
+
+	/**
+	 * @param corpusDir
+	 * @return the location of the news articles the corpus was converted from
+	 * @throws IOException
+	 */
+	public static String sourceFile(String corpusDir) throws IOException {
+		return new String(Files.readAllBytes(new File(corpusDir, SOURCE).toPath()), StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * Reads the articles of the corpus, one task per range of records of about
+	 * RANGE_BYTES, and at least one per core.
+	 *
+	 * @param spark
+	 * @param corpusDir
+	 * @param termDictionary - term ids of the query vocabulary
+	 * @param encoder        - encoder of NewsArticleInfo
+	 * @return the articles of the corpus as compact NewsArticleInfo
+	 * @throws IOException
+	 */
+	public static Dataset<NewsArticleInfo> readArticles(SparkSession spark, String corpusDir,
+			Broadcast<TermDictionary> termDictionary, Encoder<NewsArticleInfo> encoder) throws IOException {
+		File corpusFile = new File(corpusDir, CORPUS).getAbsoluteFile();
+
+		// corpus term id to query term id
+		TermDictionary dictionary = termDictionary.getValue();
+		List<Integer> queryTermIds = new ArrayList<Integer>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				Files.newInputStream(new File(corpusDir, VOCABULARY).toPath()), StandardCharsets.UTF_8))) {
+			String term;
+			while ((term = reader.readLine()) != null)
+				queryTermIds.add(dictionary.getId(term));
+		}
+		int[] termIds = new int[queryTermIds.size()];
+		for (int i = 0; i < termIds.length; i++)
+			termIds[i] = queryTermIds.get(i);
+
+		// ranges of documents of about RANGE_BYTES each
+		List<DocumentRange> ranges = new ArrayList<DocumentRange>();
+		try (FileChannel channel = FileChannel.open(corpusFile.toPath())) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException(corpusFile + " is not a binary corpus of version " + VERSION);
+			int documents = header.getInt();
+			long offsetsPosition = header.getLong();
+			LongBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsPosition, 8L * (documents + 1))
+					.asLongBuffer();
+
+			long totalBytes = offsets.get(documents) - offsets.get(0);
+			int rangeCount = (int) Math.max(spark.sparkContext().defaultParallelism(),
+					(totalBytes + RANGE_BYTES - 1) / RANGE_BYTES);
+			int first = 0;
+			for (int range = 1; range <= rangeCount && first < documents; range++) {
+				long end = offsets.get(0) + totalBytes * range / rangeCount;
+				int last = first + 1;
+				while (last < documents && offsets.get(last) < end)
+					last++;
+				ranges.add(new DocumentRange(first, last));
+				first = last;
+			}
+		}
+
+		JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+		Broadcast<int[]> broadcastTermIds = sc.broadcast(termIds);
+		return spark
+				.createDataset(sc.parallelize(ranges, Math.max(1, ranges.size())).rdd(),
+						Encoders.bean(DocumentRange.class))
+				.flatMap(new BinaryCorpusFlatMap(corpusFile.getPath(), broadcastTermIds), encoder);
+	}
+}
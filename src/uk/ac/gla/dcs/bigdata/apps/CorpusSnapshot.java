@@ -0,0 +1,355 @@
+package uk.ac.gla.dcs.bigdata.apps;
+
+import static org.apache.spark.sql.functions.coalesce;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.explode;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.sum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.SnapshotArticleMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.SnapshotFile;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+
+/**
+ * Pre-processed snapshot of the news articles, so that a corpus is parsed and
+ * tokenized once (BIGDATA_MODE=ingest) and then queried any number of times.
+ * 
+ * A snapshot directory holds the following Parquet tables:
+ * <ul>
+ * <li>articles - the output of ArticleInfoFlatMap for every article with a
+ * title: id, title, lengthOfDocument and termDict (the frequency of every
+ * pre-processed term)</li>
+ * <li>documents - the NewsArticle of every article, read for the final results
+ * only</li>
+ * <li>terms - the frequency of every term within the corpus</li>
+ * <li>statistics - the CorpusStatistics of the snapshot</li>
+ * <li>files - the input files ingested, with a fingerprint of their content</li>
+ * </ul>
+ * 
+ * Snapshots are versioned and grow incrementally: an ingest only processes the
+ * input files that are not in the snapshot yet, appends their articles, documents
+ * and term frequencies as a new version partition, and writes the statistics of
+ * the new version as those of the previous one plus those of the new files. The
+ * cost of adding files is therefore proportional to the new data. If an ingested
+ * file has changed or disappeared, its statistics cannot be taken out again and
+ * the snapshot is rebuilt from all the input files, as a new version as well: its
+ * statistics record it as the base version, the first one read by the tables,
+ * and the older versions are only deleted once it is committed.
+ * 
+ * AssessedExercise.rankDocuments accepts a snapshot directory in place of the
+ * news file (BIGDATA_NEWS), in which case no Json is parsed and no text is
+ * pre-processed.
+ */
+public class CorpusSnapshot {
+
+	public static final String ARTICLES = "articles";
+	public static final String DOCUMENTS = "documents";
+	public static final String TERMS = "terms";
+	public static final String STATISTICS = "statistics";
+	public static final String FILES = "files";
+	public static final String VERSION = "version";
+	public static final String BASE = "base";
+
+	/**
+	 * Adds the news files that are not in the snapshot yet as a new version of the
+	 * snapshot, creating the snapshot if needed.
+	 * 
+	 * @param spark
+	 * @param newsFile    - location of the news articles: a file, directory or glob
+	 * @param snapshotDir - directory of the snapshot
+	 * @return the version of the snapshot after the ingest
+	 * @throws IOException
+	 */
+	public static long ingest(SparkSession spark, String newsFile, String snapshotDir) throws IOException {
+
+		List<SnapshotFile> inputFiles = listFiles(spark, newsFile);
+
+		// compare with the files of the current version
+		long version = 0;
+		long base = 0;
+		Map<String, String> ingested = new HashMap<String, String>();
+		if (isSnapshot(spark, snapshotDir)) {
+			Row statistics = readStatistics(spark, snapshotDir);
+			version = statistics.getLong(2);
+			base = statistics.getLong(3);
+			for (SnapshotFile file : readTable(spark, snapshotDir, FILES)
+					.as(Encoders.bean(SnapshotFile.class)).collectAsList())
+				ingested.put(file.getPath(), file.getFingerprint());
+		}
+		Set<String> inputPaths = new HashSet<String>();
+		List<SnapshotFile> newFiles = new ArrayList<SnapshotFile>();
+		for (SnapshotFile file : inputFiles) {
+			inputPaths.add(file.getPath());
+			if (!ingested.containsKey(file.getPath()))
+				newFiles.add(file);
+		}
+		boolean rebuild = version == 0;
+		for (Map.Entry<String, String> file : ingested.entrySet()) {
+			if (!inputPaths.contains(file.getKey()) || !findFile(inputFiles, file.getKey()).getFingerprint().equals(file.getValue()))
+				rebuild = true; // an ingested file changed or is gone
+		}
+		if (rebuild)
+			newFiles = inputFiles;
+		if (newFiles.isEmpty())
+			return version;
+
+		long newVersion = version + 1;
+		if (rebuild)
+			base = newVersion;
+		String[] paths = new String[newFiles.size()];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = newFiles.get(i).getPath();
+			newFiles.get(i).setVersion(newVersion);
+		}
+
+		Dataset<Row> newsjson = spark.read().text(paths);
+		Dataset<NewsArticle> news = newsjson.map(new NewsFormaterMap(), Encoders.bean(NewsArticle.class));
+
+		Dataset<Row> articleInfo = news
+				.flatMap(new ArticleInfoFlatMap(), Encoders.bean(NewsArticleInfo.class))
+				.withColumn(VERSION, lit(newVersion))
+				.persist(StorageLevel.MEMORY_AND_DISK());
+
+		// pre-processed articles, one Parquet file per partition
+		writeVersion(articleInfo.select(col("id"), col("title"), col("lengthOfDocument"), col("termDict"), col(VERSION)),
+				snapshotDir + "/" + ARTICLES);
+
+		// document store
+		writeVersion(articleInfo.select(col("article.*"), col(VERSION)), snapshotDir + "/" + DOCUMENTS);
+
+		// term frequencies of the new articles
+		writeVersion(articleInfo.select(explode(col("termDict")).as(new String[] { "term", "frequency" }), col(VERSION))
+				.groupBy(col("term"), col(VERSION)).agg(sum(col("frequency")).as("frequency")),
+				snapshotDir + "/" + TERMS);
+
+		writeVersion(spark.createDataset(newFiles, Encoders.bean(SnapshotFile.class)).toDF(), snapshotDir + "/" + FILES);
+
+		// corpus statistics of the new version: those of the previous version plus the
+		// new articles
+		Row totals = articleInfo.agg(count(lit(1)), sum(col("lengthOfDocument"))).first();
+		long totalDocsInCorpus = totals.getLong(0);
+		long totalDocumentLength = totals.isNullAt(1) ? 0 : totals.getLong(1);
+		if (!rebuild) {
+			Row previous = readStatistics(spark, snapshotDir);
+			totalDocsInCorpus += previous.getLong(0);
+			totalDocumentLength += previous.getLong(1);
+		}
+		// the statistics are written last and commit the new version: the partitions of
+		// a failed ingest (or rebuild) are never read and are replaced by the next ingest
+		spark.createDataset(Collections.singletonList(new CorpusStatistics(totalDocsInCorpus, totalDocumentLength)),
+				Encoders.bean(CorpusStatistics.class))
+				.select(col("totalDocsInCorpus"), col("totalDocumentLength"), lit(newVersion).as(VERSION),
+						lit(base).as(BASE))
+				.write().mode(SaveMode.Append).parquet(snapshotDir + "/" + STATISTICS);
+
+		articleInfo.unpersist();
+
+		// the versions before a committed rebuild are no longer read
+		if (rebuild) {
+			for (String table : new String[] { ARTICLES, DOCUMENTS, TERMS, FILES })
+				deleteVersionsBefore(spark, snapshotDir + "/" + table, base);
+		}
+		return newVersion;
+	}
+
+	/**
+	 * Writes the rows of a new version into the version partition of a table,
+	 * replacing only that partition (left over by a failed ingest).
+	 * 
+	 * @param rows
+	 * @param path
+	 */
+	private static void writeVersion(Dataset<Row> rows, String path) {
+		rows.write().mode(SaveMode.Overwrite).partitionBy(VERSION).option("partitionOverwriteMode", "dynamic")
+				.parquet(path);
+	}
+
+	/**
+	 * Deletes the version partitions of a table that are older than the given
+	 * version.
+	 * 
+	 * @param spark
+	 * @param path
+	 * @param version
+	 * @throws IOException
+	 */
+	private static void deleteVersionsBefore(SparkSession spark, String path, long version) throws IOException {
+		Path table = new Path(path);
+		FileSystem fs = table.getFileSystem(spark.sparkContext().hadoopConfiguration());
+		for (FileStatus status : fs.listStatus(table)) {
+			String name = status.getPath().getName();
+			if (status.isDirectory() && name.startsWith(VERSION + "=")
+					&& Long.parseLong(name.substring(VERSION.length() + 1)) < version)
+				fs.delete(status.getPath(), true);
+		}
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @param table
+	 * @return the rows of a table from the base version to the latest committed
+	 *         version
+	 */
+	public static Dataset<Row> readTable(SparkSession spark, String snapshotDir, String table) {
+		Row statistics = readStatistics(spark, snapshotDir);
+		return spark.read().parquet(snapshotDir + "/" + table)
+				.filter(col(VERSION).geq(statistics.getLong(3)).and(col(VERSION).leq(statistics.getLong(2))));
+	}
+
+	/**
+	 * @param spark
+	 * @param newsFile - a file, directory or glob
+	 * @return the input files with their fingerprint
+	 * @throws IOException
+	 */
+	private static List<SnapshotFile> listFiles(SparkSession spark, String newsFile) throws IOException {
+		Path pattern = new Path(newsFile);
+		FileSystem fs = pattern.getFileSystem(spark.sparkContext().hadoopConfiguration());
+		List<SnapshotFile> files = new ArrayList<SnapshotFile>();
+		FileStatus[] matches = fs.globStatus(pattern);
+		if (matches == null)
+			return files;
+		for (FileStatus match : matches) {
+			FileStatus[] statuses = match.isDirectory() ? fs.listStatus(match.getPath()) : new FileStatus[] { match };
+			for (FileStatus status : statuses) {
+				String name = status.getPath().getName();
+				if (status.isFile() && !name.startsWith(".") && !name.startsWith("_"))
+					files.add(new SnapshotFile(status.getPath().toString(), fingerprint(fs, status), 0));
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @param fs
+	 * @param status
+	 * @return the checksum of the file, or its length and modification time if the
+	 *         file system does not provide checksums (e.g. the local file system)
+	 * @throws IOException
+	 */
+	private static String fingerprint(FileSystem fs, FileStatus status) throws IOException {
+		FileChecksum checksum = fs.getFileChecksum(status.getPath());
+		if (checksum != null)
+			return checksum.getAlgorithmName() + ":" + StringUtils.byteToHexString(checksum.getBytes());
+		return "length:" + status.getLen() + ",modified:" + status.getModificationTime();
+	}
+
+	private static SnapshotFile findFile(List<SnapshotFile> files, String path) {
+		for (SnapshotFile file : files)
+			if (file.getPath().equals(path))
+				return file;
+		return null;
+	}
+
+	/**
+	 * @param spark
+	 * @param location - news file or snapshot directory
+	 * @return whether the location is a snapshot directory
+	 */
+	public static boolean isSnapshot(SparkSession spark, String location) {
+		Path statistics = new Path(location, STATISTICS);
+		try {
+			return statistics.getFileSystem(spark.sparkContext().hadoopConfiguration()).exists(statistics);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @return the statistics of the latest version of the snapshot corpus
+	 */
+	public static CorpusStatistics statistics(SparkSession spark, String snapshotDir) {
+		Row statistics = readStatistics(spark, snapshotDir);
+		return new CorpusStatistics(statistics.getLong(0), statistics.getLong(1));
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @return totalDocsInCorpus, totalDocumentLength, version and base version of
+	 *         the latest version
+	 */
+	private static Row readStatistics(SparkSession spark, String snapshotDir) {
+		// snapshots written before rebuilds were versioned have no base, i.e. 0
+		Dataset<Row> statistics = spark.read().option("mergeSchema", "true").parquet(snapshotDir + "/" + STATISTICS);
+		Column base = Arrays.asList(statistics.columns()).contains(BASE) ? coalesce(col(BASE), lit(0L)) : lit(0L);
+		return statistics.select(col("totalDocsInCorpus"), col("totalDocumentLength"), col(VERSION), base.as(BASE))
+				.orderBy(col(VERSION).desc()).first();
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @param terms       - terms to look up
+	 * @return the frequency of the terms within the corpus
+	 */
+	public static ArticleTermFreqDict readTermFrequencies(SparkSession spark, String snapshotDir, Set<String> terms) {
+		Map<String, Long> termFreqdict = new HashMap<String, Long>();
+		for (Row row : readTable(spark, snapshotDir, TERMS)
+				.filter(col("term").isin(terms.toArray()))
+				.groupBy(col("term")).agg(sum(col("frequency")))
+				.collectAsList())
+			termFreqdict.put(row.getString(0), row.getLong(1));
+		return new ArticleTermFreqDict(termFreqdict);
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @param termDictionary - term ids of the query vocabulary
+	 * @param encoder        - encoder of NewsArticleInfo
+	 * @return the articles of the snapshot as compact NewsArticleInfo
+	 */
+	public static Dataset<NewsArticleInfo> readArticles(SparkSession spark, String snapshotDir,
+			Broadcast<TermDictionary> termDictionary, Encoder<NewsArticleInfo> encoder) {
+		return readTable(spark, snapshotDir, ARTICLES).map(new SnapshotArticleMap(termDictionary), encoder);
+	}
+
+	/**
+	 * @param spark
+	 * @param snapshotDir
+	 * @param docids      - ids of the articles to read
+	 * @return the stored articles with the given ids
+	 */
+	public static List<NewsArticle> readDocuments(SparkSession spark, String snapshotDir, Set<String> docids) {
+		return readTable(spark, snapshotDir, DOCUMENTS)
+				.filter(col("id").isin(docids.toArray()))
+				.as(Encoders.bean(NewsArticle.class))
+				.collectAsList();
+	}
+}
@@ -0,0 +1,171 @@
+package uk.ac.gla.dcs.bigdata.apps;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.sum;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import scala.Tuple2;
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.PostingFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.PostingGroupMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.Posting;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+
+/**
+ * Builds a persistent inverted index of the news articles and answers queries
+ * from it.
+ * 
+ * The index is written once (BIGDATA_MODE=index) as three Parquet tables below
+ * the index directory:
+ * <ul>
+ * <li>postings - one Posting per <term, article>, range partitioned and sorted
+ * by term so that Parquet statistics let a lookup skip unrelated row groups</li>
+ * <li>documents - the NewsArticle of every indexed article, keyed by id. Only
+ * the titles are read while ranking, full articles are read for the final
+ * results</li>
+ * <li>statistics - the CorpusStatistics of the indexed corpus</li>
+ * </ul>
+ * 
+ * In query mode (BIGDATA_MODE=query) only the postings of the query terms are
+ * read, so a query batch costs a few postings lookups instead of a full scan and
+ * re-processing of the corpus.
+ */
+public class InvertedIndex {
+
+	public static final String POSTINGS = "postings";
+	public static final String DOCUMENTS = "documents";
+	public static final String STATISTICS = "statistics";
+
+	/**
+	 * Processes the news articles and writes the inverted index, document store and
+	 * corpus statistics to the index directory, replacing any existing index.
+	 * 
+	 * @param spark
+	 * @param newsFile - location of the news articles
+	 * @param indexDir - directory the index is written to
+	 */
+	public static void build(SparkSession spark, String newsFile, String indexDir) {
+
+		Dataset<Row> newsjson = spark.read().text(newsFile);
+		Dataset<NewsArticle> news = newsjson.map(new NewsFormaterMap(), Encoders.bean(NewsArticle.class));
+
+		Dataset<NewsArticleInfo> articleInfo = news
+				.flatMap(new ArticleInfoFlatMap(), Encoders.bean(NewsArticleInfo.class))
+				.persist(StorageLevel.MEMORY_AND_DISK());
+
+		// corpus statistics
+		Row totals = articleInfo.agg(count(lit(1)), sum(col("lengthOfDocument"))).first();
+		long totalDocsInCorpus = totals.getLong(0);
+		long totalDocumentLength = totals.isNullAt(1) ? 0 : totals.getLong(1);
+		spark.createDataset(Collections.singletonList(new CorpusStatistics(totalDocsInCorpus, totalDocumentLength)),
+				Encoders.bean(CorpusStatistics.class)).write().mode(SaveMode.Overwrite)
+				.parquet(indexDir + "/" + STATISTICS);
+
+		// postings, clustered by term
+		articleInfo.flatMap(new PostingFlatMap(), Encoders.bean(Posting.class))
+				.repartitionByRange(col("term"))
+				.sortWithinPartitions(col("term"))
+				.write().mode(SaveMode.Overwrite).parquet(indexDir + "/" + POSTINGS);
+
+		// document store
+		articleInfo.map((MapFunction<NewsArticleInfo, NewsArticle>) (article -> article.getArticle()),
+				Encoders.bean(NewsArticle.class))
+				.write().mode(SaveMode.Overwrite).parquet(indexDir + "/" + DOCUMENTS);
+
+		articleInfo.unpersist();
+	}
+
+	/**
+	 * Answers the queries in the query file from a previously built index.
+	 * 
+	 * @param spark
+	 * @param queryFile - location of the queries
+	 * @param indexDir  - directory of the index
+	 * @return the top 10 articles for each query
+	 */
+	public static List<DocumentRanking> rankDocuments(SparkSession spark, String queryFile, String indexDir) {
+
+		Dataset<Row> queriesjson = spark.read().text(queryFile);
+		List<Query> queryList = queriesjson.map(new QueryFormaterMap(), Encoders.bean(Query.class)).collectAsList();
+
+		// the vocabulary of the query batch
+		Set<String> queryTerms = new LinkedHashSet<String>();
+		for (Query query : queryList)
+			queryTerms.addAll(query.getQueryTerms());
+		Broadcast<TermDictionary> termDictionary = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(TermDictionary.fromQueries(queryList));
+
+		CorpusStatistics statistics = spark.read().parquet(indexDir + "/" + STATISTICS)
+				.as(Encoders.bean(CorpusStatistics.class)).first();
+
+		// postings of the query terms only, read twice below so keep them around
+		Dataset<Posting> postings = spark.read().parquet(indexDir + "/" + POSTINGS)
+				.filter(col("term").isin(queryTerms.toArray()))
+				.as(Encoders.bean(Posting.class))
+				.persist(StorageLevel.MEMORY_AND_DISK());
+
+		// the frequency of a term within the corpus is the sum over its postings
+		Map<String, Long> termFreqdict = new HashMap<String, Long>();
+		for (Row row : postings.groupBy(col("term")).agg(sum(col("termFrequency"))).collectAsList())
+			termFreqdict.put(row.getString(0), row.getLong(1));
+
+		// rebuild the articles that contain at least one query term and attach their
+		// title, only the id and title columns of the document store are read
+		Dataset<NewsArticleInfo> matched = postings.groupByKey((MapFunction<Posting, String>) (posting -> posting.getDocid()),
+				Encoders.STRING()).mapGroups(new PostingGroupMap(termDictionary), Encoders.bean(NewsArticleInfo.class));
+		Dataset<Row> documents = spark.read().parquet(indexDir + "/" + DOCUMENTS);
+		Dataset<Row> titles = documents.select(col("id"), col("title"));
+
+		Dataset<NewsArticleInfo> articleInfo = matched
+				.joinWith(titles, matched.col("id").equalTo(titles.col("id")))
+				.map((MapFunction<Tuple2<NewsArticleInfo, Row>, NewsArticleInfo>) (tuple -> {
+					NewsArticleInfo article = tuple._1;
+					article.setTitle(tuple._2.getString(1));
+					return article;
+				}), Encoders.bean(NewsArticleInfo.class));
+
+		List<QueryRanking> rankings = AssessedExercise.rankArticles(spark, articleInfo, queryList, termDictionary,
+				new ArticleTermFreqDict(termFreqdict), statistics.getTotalDocsInCorpus(),
+				statistics.averageDocumentLengthInCorpus());
+
+		// read the stored articles of the final results only
+		List<NewsArticle> resultArticles = documents
+				.filter(col("id").isin(AssessedExercise.rankedDocids(rankings).toArray()))
+				.as(Encoders.bean(NewsArticle.class))
+				.collectAsList();
+		List<DocumentRanking> results = AssessedExercise.attachArticles(rankings, queryList, resultArticles);
+		for (DocumentRanking result : results) {
+			System.out.println(result);
+		}
+
+		postings.unpersist();
+		return results;
+	}
+}
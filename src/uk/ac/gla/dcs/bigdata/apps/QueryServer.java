@@ -0,0 +1,231 @@
+package uk.ac.gla.dcs.bigdata.apps;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.sum;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.ReduceFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleIdFilter;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.CorpusStatisticsMapPartitions;
+import uk.ac.gla.dcs.bigdata.studentfunctions.NewsArticleParserFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.SnapshotArticleMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineEncoders;
+
+/**
+ * Long-lived query serving (BIGDATA_MODE=serve). The news articles are
+ * pre-processed once, kept in memory together with the corpus statistics, and
+ * query batches are then answered against that cached corpus, so a batch only
+ * pays for scoring and not for Spark startup, parsing or tokenization.
+ * 
+ * The corpus is either a news file or a corpus snapshot (see CorpusSnapshot).
+ * Query batches are read with a line protocol, from stdin or, if
+ * BIGDATA_SERVER_PORT is set, from connections on that local port (one at a
+ * time):
+ * <ul>
+ * <li>every non-empty line is a query of the current batch</li>
+ * <li>an empty line (or the end of the input) answers the batch: the
+ * DocumentRanking of every query is written, followed by a line with a single
+ * "."</li>
+ * <li>if the batch cannot be answered, a line starting with "ERROR " and the
+ * cause is written instead of the rankings, still followed by ".", and the
+ * server goes on with the next batch</li>
+ * </ul>
+ */
+public class QueryServer {
+
+	public static final String END_OF_BATCH = ".";
+	public static final String ERROR = "ERROR ";
+
+	private final SparkSession spark;
+	private final String newsFile;
+	private final boolean snapshot;
+
+	private final Dataset<Row> articles; // id, title, lengthOfDocument and termDict of every article, cached
+	private final CorpusStatistics statistics;
+
+	private final QueryFormaterMap queryFormater = new QueryFormaterMap();
+
+	/**
+	 * Pre-processes the news articles (or reads the snapshot) and caches them.
+	 * 
+	 * @param spark
+	 * @param newsFile - location of the news articles or of a corpus snapshot
+	 */
+	public QueryServer(SparkSession spark, String newsFile) {
+		this.spark = spark;
+		this.newsFile = newsFile;
+		this.snapshot = CorpusSnapshot.isSnapshot(spark, newsFile);
+
+		Dataset<Row> articleRows;
+		if (snapshot) {
+			articleRows = CorpusSnapshot.readTable(spark, newsFile, CorpusSnapshot.ARTICLES);
+		} else {
+			articleRows = spark.read().text(newsFile)
+					.flatMap(new NewsArticleParserFlatMap(), Encoders.bean(NewsArticle.class))
+					.flatMap(new ArticleInfoFlatMap(), Encoders.bean(NewsArticleInfo.class))
+					.select(col("id"), col("title"), col("lengthOfDocument"), col("termDict"));
+		}
+		this.articles = articleRows.persist(StorageLevel.MEMORY_AND_DISK());
+
+		Row totals = articles.agg(count(lit(1)), sum(col("lengthOfDocument"))).first();
+		this.statistics = new CorpusStatistics(totals.getLong(0), totals.isNullAt(1) ? 0 : totals.getLong(1));
+	}
+
+	/**
+	 * Answers a batch of queries against the cached corpus.
+	 * 
+	 * @param queryTexts - original text of the queries
+	 * @return the top 10 articles for each query
+	 * @throws Exception
+	 */
+	public List<DocumentRanking> answer(List<String> queryTexts) throws Exception {
+		List<Query> queryList = new ArrayList<Query>(queryTexts.size());
+		for (String queryText : queryTexts)
+			queryList.add(queryFormater.call(RowFactory.create(queryText)));
+
+		JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+		Broadcast<TermDictionary> broadcastTermIds = sc.broadcast(TermDictionary.fromQueries(queryList));
+
+		// the articles with the term ids of this batch, converted once for both the
+		// statistics and the ranking
+		Dataset<NewsArticleInfo> articleInfo = articles
+				.map(new SnapshotArticleMap(broadcastTermIds), PipelineEncoders.forClass(NewsArticleInfo.class))
+				.persist(PipelineEncoders.storageLevel());
+		List<QueryRanking> rankings;
+		try {
+			// query term frequencies within the corpus, and the score lines if pruning is used
+			boolean pruning = !"none".equalsIgnoreCase(System.getenv("BIGDATA_PRUNING"));
+			CorpusTermStatistics corpusStatistics = articleInfo
+					.mapPartitions(new CorpusStatisticsMapPartitions(broadcastTermIds, pruning), PipelineEncoders.forClass(CorpusTermStatistics.class))
+					.reduce((ReduceFunction<CorpusTermStatistics>)((statistics1, statistics2) -> statistics1.mergeWith(statistics2)));
+			Map<String, double[]> termScoreLines = corpusStatistics.getTermScoreLines();
+
+			rankings = AssessedExercise.rankArticles(spark, articleInfo, queryList, broadcastTermIds,
+					corpusStatistics.toArticleTermFreqDict(), statistics.getTotalDocsInCorpus(),
+					statistics.averageDocumentLengthInCorpus(), termScoreLines);
+		} finally {
+			// the server outlives many batches, release the per-batch data
+			articleInfo.unpersist();
+			broadcastTermIds.destroy();
+		}
+
+		Set<String> docids = AssessedExercise.rankedDocids(rankings);
+		List<NewsArticle> resultArticles;
+		if (snapshot) {
+			resultArticles = CorpusSnapshot.readDocuments(spark, newsFile, docids);
+		} else {
+			Broadcast<Set<String>> resultDocids = sc.broadcast(docids);
+			try {
+				resultArticles = spark.read().text(newsFile).filter(new ArticleIdFilter(resultDocids))
+						.map(new NewsFormaterMap(), PipelineEncoders.forClass(NewsArticle.class))
+						.collectAsList();
+			} finally {
+				resultDocids.destroy();
+			}
+		}
+		return AssessedExercise.attachArticles(rankings, queryList, resultArticles);
+	}
+
+	/**
+	 * Reads query batches from the input and writes their rankings to the output
+	 * until the end of the input.
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	public void serve(BufferedReader in, PrintWriter out) throws IOException {
+		List<String> batch = new ArrayList<String>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.trim().isEmpty())
+				answerBatch(batch, out);
+			else
+				batch.add(line.trim());
+		}
+		if (!batch.isEmpty())
+			answerBatch(batch, out);
+	}
+
+	private void answerBatch(List<String> batch, PrintWriter out) {
+		if (!batch.isEmpty()) {
+			long start = System.currentTimeMillis();
+			try {
+				for (DocumentRanking ranking : answer(batch))
+					out.println(ranking);
+				// stdout may be the protocol output
+				System.err.println("Answered " + batch.size() + " queries in " + (System.currentTimeMillis() - start) + "ms");
+			} catch (Exception e) {
+				// a failed batch (Spark job or query parsing) must not stop the server
+				e.printStackTrace();
+				String message = String.valueOf(e.getMessage());
+				out.println(ERROR + (message.indexOf('\n') < 0 ? message : message.substring(0, message.indexOf('\n'))));
+			} finally {
+				batch.clear();
+			}
+		}
+		out.println(END_OF_BATCH);
+		out.flush();
+	}
+
+	/**
+	 * Serves stdin, or the connections on the given local port.
+	 * 
+	 * @param port - local port, or null for stdin
+	 * @throws IOException
+	 */
+	public void run(String port) throws IOException {
+		if (port == null) {
+			serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+					new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+			return;
+		}
+
+		try (ServerSocket server = new ServerSocket(Integer.parseInt(port), 50, InetAddress.getLoopbackAddress())) {
+			System.err.println("Serving queries on " + server.getLocalSocketAddress());
+			while (true) {
+				try (Socket socket = server.accept()) {
+					serve(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)),
+							new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
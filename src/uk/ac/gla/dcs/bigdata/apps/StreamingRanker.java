@@ -0,0 +1,185 @@
+package uk.ac.gla.dcs.bigdata.apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FilterFunction;
+import org.apache.spark.api.java.function.ReduceFunction;
+import org.apache.spark.api.java.function.VoidFunction2;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.streaming.StreamingQuery;
+import org.apache.spark.sql.streaming.Trigger;
+
+import uk.ac.gla.dcs.bigdata.providedfunctions.NewsFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedfunctions.QueryFormaterMap;
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleIdFilter;
+import uk.ac.gla.dcs.bigdata.studentfunctions.ArticleInfoFlatMap;
+import uk.ac.gla.dcs.bigdata.studentfunctions.CorpusStatisticsMapPartitions;
+import uk.ac.gla.dcs.bigdata.studentfunctions.NewsArticleParserFlatMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineEncoders;
+import uk.ac.gla.dcs.bigdata.studentutilities.ResultsWriter;
+
+/**
+ * Keeps the top 10 of a standing set of queries current while new news articles
+ * arrive (BIGDATA_MODE=stream).
+ * 
+ * A Structured Streaming query watches a directory for new Json files. For every
+ * micro-batch only the new articles are parsed and pre-processed, and the
+ * document count, total document length and query term frequencies of the
+ * corpus are updated incrementally. As DPH depends on these statistics, every
+ * article that contains a query term is kept (in its compact form, with the
+ * query term frequencies only) and re-scored against the updated statistics, so
+ * the rankings are the same as a batch run over all the files seen so far. The
+ * updated DocumentRanking of every query is printed and written to the results
+ * directory after each micro-batch.
+ * 
+ * The statistics are held by the driver and are not checkpointed, a restarted
+ * stream starts again from the files in the directory.
+ */
+public class StreamingRanker {
+
+	private final SparkSession spark;
+	private final String streamDir;
+	private final String resultsDir;
+
+	private final List<Query> queryList;
+	private final Broadcast<TermDictionary> broadcastTermIds;
+
+	// corpus statistics of the articles seen so far
+	private long totalDocsInCorpus = 0;
+	private long totalDocumentLength = 0;
+	private ArticleTermFreqDict corpusTermDict = new ArticleTermFreqDict(new HashMap<String, Long>());
+
+	private Dataset<NewsArticleInfo> matchedArticles; // articles seen so far containing a query term
+	private Map<String, NewsArticle> resultArticles = new HashMap<String, NewsArticle>(); // articles of the current results
+
+	/**
+	 * @param spark
+	 * @param queryFile  - location of the standing queries
+	 * @param streamDir  - directory watched for new news files
+	 * @param resultsDir - directory the rankings are written to
+	 */
+	public StreamingRanker(SparkSession spark, String queryFile, String streamDir, String resultsDir) {
+		this.spark = spark;
+		this.streamDir = streamDir;
+		this.resultsDir = resultsDir;
+
+		this.queryList = spark.read().text(queryFile)
+				.map(new QueryFormaterMap(), PipelineEncoders.forClass(Query.class)).collectAsList();
+		this.broadcastTermIds = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(TermDictionary.fromQueries(queryList));
+		this.matchedArticles = spark.emptyDataset(PipelineEncoders.forClass(NewsArticleInfo.class));
+	}
+
+	/**
+	 * Runs the stream until it is stopped, or until the files present are processed
+	 * when the trigger is "once".
+	 * 
+	 * @param trigger - processing time interval (e.g. "10 seconds") or "once"
+	 * @throws Exception
+	 */
+	public void run(String trigger) throws Exception {
+		StreamingQuery query = spark.readStream().text(streamDir).writeStream()
+				.foreachBatch((VoidFunction2<Dataset<Row>, Long>) ((batch, batchId) -> processBatch(batch, batchId)))
+				.trigger("once".equalsIgnoreCase(trigger) ? Trigger.Once() : Trigger.ProcessingTime(trigger))
+				.start();
+		query.awaitTermination();
+	}
+
+	/**
+	 * Adds the articles of a micro-batch to the corpus and updates the rankings.
+	 * 
+	 * @param newsjson - the new Json rows
+	 * @param batchId
+	 * @throws IOException
+	 */
+	private void processBatch(Dataset<Row> newsjson, long batchId) throws IOException {
+		long start = System.currentTimeMillis();
+
+		Dataset<NewsArticleInfo> articleInfo = newsjson
+				.flatMap(new NewsArticleParserFlatMap(), PipelineEncoders.forClass(NewsArticle.class))
+				.flatMap(new ArticleInfoFlatMap(broadcastTermIds), PipelineEncoders.forClass(NewsArticleInfo.class))
+				.persist(PipelineEncoders.storageLevel());
+
+		// statistics of the new articles only (in a single pass), merged into those of
+		// the corpus; the score lines are not gathered as the ranking is not pruned
+		CorpusTermStatistics batchStatistics = articleInfo
+				.mapPartitions(new CorpusStatisticsMapPartitions(broadcastTermIds, false), PipelineEncoders.forClass(CorpusTermStatistics.class))
+				.reduce((ReduceFunction<CorpusTermStatistics>)((statistics1, statistics2) -> statistics1.mergeWith(statistics2)));
+		if (batchStatistics.getTotalDocsInCorpus() == 0) {
+			articleInfo.unpersist();
+			return;
+		}
+		totalDocsInCorpus += batchStatistics.getTotalDocsInCorpus();
+		totalDocumentLength += batchStatistics.getTotalDocumentLength();
+		corpusTermDict = corpusTermDict.mergeWith(batchStatistics.toArticleTermFreqDict());
+
+		// articles without any query term can never be ranked
+		// the micro-batch cannot be recomputed once processed and the lineage would grow
+		// with every batch, so the union is checkpointed (the previous checkpoint is
+		// released by the context cleaner once unreferenced)
+		matchedArticles = matchedArticles.union(articleInfo.filter(
+				(FilterFunction<NewsArticleInfo>) (article -> article.getTermFrequencies().getSize() > 0)))
+				.localCheckpoint();
+
+		List<QueryRanking> rankings = AssessedExercise.rankArticles(spark, matchedArticles, queryList, broadcastTermIds,
+				corpusTermDict, totalDocsInCorpus, totalDocumentLength / totalDocsInCorpus);
+
+		// articles that entered the results, looked up in the new files first and in
+		// the files seen before otherwise
+		Set<String> docids = AssessedExercise.rankedDocids(rankings);
+		resultArticles.keySet().retainAll(docids);
+		Set<String> missing = new HashSet<String>(docids);
+		missing.removeAll(resultArticles.keySet());
+		fetchArticles(newsjson, missing);
+		if (!missing.isEmpty())
+			fetchArticles(spark.read().text(streamDir), missing);
+		articleInfo.unpersist();
+
+		List<DocumentRanking> results = AssessedExercise.attachArticles(rankings, queryList,
+				new ArrayList<NewsArticle>(resultArticles.values()));
+		for (DocumentRanking result : results)
+			System.out.println(result);
+		ResultsWriter.fromEnvironment().write(results, new File(resultsDir).getAbsoluteFile());
+		System.out.println("Batch " + batchId + ": " + batchStatistics.getTotalDocsInCorpus() + " new articles, "
+				+ totalDocsInCorpus + " in corpus, rankings updated in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Adds the articles with the given ids found in the Json rows to the result
+	 * articles and removes their ids from the set.
+	 * 
+	 * @param newsjson
+	 * @param docids
+	 */
+	private void fetchArticles(Dataset<Row> newsjson, Set<String> docids) {
+		if (docids.isEmpty())
+			return;
+		Broadcast<Set<String>> broadcastDocids = JavaSparkContext.fromSparkContext(spark.sparkContext())
+				.broadcast(new HashSet<String>(docids));
+		for (NewsArticle article : newsjson.filter(new ArticleIdFilter(broadcastDocids))
+				.map(new NewsFormaterMap(), PipelineEncoders.forClass(NewsArticle.class)).collectAsList()) {
+			resultArticles.put(article.getId(), article);
+			docids.remove(article.getId());
+		}
+		broadcastDocids.destroy();
+	}
+}
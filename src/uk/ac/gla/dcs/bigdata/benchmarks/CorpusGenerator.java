@@ -0,0 +1,224 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generates a synthetic news collection with the shape of the Washington Post
+ * collection (one Json NewsArticle per line), and a query file, at any size.
+ * 
+ * Words are drawn from a Zipfian vocabulary. An article has a kicker, a title,
+ * a byline and a date content item, a log-normal number of paragraphs of
+ * log-normal length, and now and then an image with a caption between the
+ * paragraphs. A share of the titles is null, and a share of the articles are
+ * updates of an earlier article whose title only differs by a few words, as the
+ * near-duplicates of the real collection. Queries are 1 to 3 words of medium
+ * frequency. The output only depends on the seed.
+ */
+public class CorpusGenerator {
+
+	static final int VOCABULARY = 50000; // distinct words
+	static final double ZIPF_EXPONENT = 1.0;
+	static final double NULL_TITLE_RATE = 0.01;
+	static final double UPDATE_RATE = 0.03; // articles re-using an earlier title with a small change
+	static final double IMAGE_RATE = 0.2; // probability of an image after a paragraph
+	static final long FIRST_DATE = 1325376000000L; // 2012-01-01
+
+	private static final String[] SYLLABLES = { "ba", "ce", "di", "fo", "gu", "ha", "je", "ki", "lo", "mu", "na",
+			"pe", "ri", "so", "tu", "va", "we", "xi", "yo", "za", "bri", "cla", "dro", "fle", "gra", "pla", "ste",
+			"tro" };
+
+	private final Random random;
+	private final String[] words;
+	private final double[] cumulative; // cumulative Zipf probability of each word rank
+
+	private final List<String> titles = new ArrayList<String>(); // earlier titles, for updates
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	public CorpusGenerator(long seed) {
+		this.random = new Random(seed);
+		this.words = new String[VOCABULARY];
+		for (int rank = 0; rank < VOCABULARY; rank++)
+			words[rank] = word(rank);
+
+		this.cumulative = new double[VOCABULARY];
+		double total = 0;
+		for (int rank = 0; rank < VOCABULARY; rank++) {
+			total += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < VOCABULARY; rank++)
+			cumulative[rank] /= total;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "data/synthetic/");
+		int articles = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+		dir.mkdirs();
+		File newsFile = new File(dir, "news-" + articles + ".json");
+		File queryFile = new File(dir, "queries-" + queries + ".list");
+		CorpusGenerator generator = new CorpusGenerator(seed);
+		generator.writeArticles(newsFile, articles);
+		generator.writeQueries(queryFile, queries);
+		System.out.println("Wrote " + articles + " articles to " + newsFile + " and " + queries + " queries to "
+				+ queryFile);
+	}
+
+	/**
+	 * @param file
+	 * @param count - number of articles
+	 * @throws IOException
+	 */
+	public void writeArticles(File file, int count) throws IOException {
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), 1 << 16)) {
+			for (int i = 0; i < count; i++) {
+				writeArticle(writer, i);
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param count - number of queries
+	 * @throws IOException
+	 */
+	public void writeQueries(File file, int count) throws IOException {
+		List<String> queries = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			int length = 1 + random.nextInt(3);
+			StringBuilder query = new StringBuilder();
+			for (int w = 0; w < length; w++) {
+				// medium frequency words, neither stopword-like nor unseen
+				query.append(w == 0 ? "" : " ").append(words[50 + random.nextInt(5000)]);
+			}
+			queries.add(query.toString());
+		}
+		Files.write(file.toPath(), queries, StandardCharsets.UTF_8);
+	}
+
+	private void writeArticle(Writer writer, int number) throws IOException {
+		String title = title();
+		long date = FIRST_DATE + number * 60000L + random.nextInt(60000);
+
+		JsonGenerator json = jsonFactory.createGenerator(writer);
+		json.writeStartObject();
+		json.writeStringField("id", String.format("%08x-%04x-synthetic", number, number % 65536));
+		json.writeStringField("article_url", "https://www.washingtonpost.com/synthetic/" + number);
+		json.writeStringField("title", title);
+		json.writeStringField("author", "Author " + random.nextInt(2000));
+		json.writeNumberField("published_date", date);
+
+		json.writeArrayFieldStart("contents");
+		contentItem(json, "kicker", null, words[random.nextInt(200)]);
+		if (title != null)
+			contentItem(json, "title", null, title);
+		contentItem(json, "byline", null, "By Author " + random.nextInt(2000));
+		json.writeStartObject();
+		json.writeStringField("type", "date");
+		json.writeNumberField("content", date);
+		json.writeEndObject();
+
+		int paragraphs = clip((int) Math.round(Math.exp(2.5 + 0.7 * random.nextGaussian())), 1, 80);
+		for (int p = 0; p < paragraphs; p++) {
+			contentItem(json, "sanitized_html", "paragraph", text(clip((int) Math.round(Math.exp(3.5 + 0.6 * random.nextGaussian())), 5, 200)));
+			if (random.nextDouble() < IMAGE_RATE) {
+				json.writeStartObject();
+				json.writeStringField("type", "image");
+				json.writeStringField("imageURL", "https://img.washingtonpost.com/synthetic/" + number + "-" + p + ".jpg");
+				json.writeStringField("fullcaption", text(8 + random.nextInt(20)));
+				json.writeNumberField("imageHeight", 480);
+				json.writeNumberField("imageWidth", 640);
+				json.writeEndObject();
+			}
+		}
+		json.writeEndArray();
+
+		json.writeStringField("type", "article");
+		json.writeStringField("source", "The Washington Post");
+		json.writeEndObject();
+		json.flush();
+	}
+
+	private void contentItem(JsonGenerator json, String type, String subtype, String content) throws IOException {
+		json.writeStartObject();
+		json.writeStringField("content", content);
+		json.writeStringField("mime", "text/plain");
+		json.writeStringField("type", type);
+		if (subtype != null)
+			json.writeStringField("subtype", subtype);
+		json.writeEndObject();
+	}
+
+	private String title() {
+		if (random.nextDouble() < NULL_TITLE_RATE)
+			return null;
+
+		String title;
+		if (!titles.isEmpty() && random.nextDouble() < UPDATE_RATE) {
+			// an update of an earlier article: a word replaced or appended
+			List<String> titleWords = new ArrayList<String>(Arrays.asList(titles.get(random.nextInt(titles.size())).split(" ")));
+			if (random.nextBoolean())
+				titleWords.set(random.nextInt(titleWords.size()), zipfWord());
+			else
+				titleWords.add(zipfWord());
+			title = String.join(" ", titleWords);
+		} else {
+			title = text(clip((int) Math.round(10 + 3 * random.nextGaussian()), 2, 25));
+		}
+
+		// keep a bounded window of recent titles to draw updates from
+		if (titles.size() == 10000)
+			titles.set(random.nextInt(titles.size()), title);
+		else
+			titles.add(title);
+		return title;
+	}
+
+	private String text(int length) {
+		StringBuilder text = new StringBuilder(length * 8);
+		for (int w = 0; w < length; w++)
+			text.append(w == 0 ? "" : " ").append(zipfWord());
+		return text.toString();
+	}
+
+	private String zipfWord() {
+		int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+		if (rank < 0)
+			rank = -rank - 1;
+		return words[Math.min(rank, VOCABULARY - 1)];
+	}
+
+	// a distinct pronounceable word for every rank, shorter words for frequent ranks
+	private static String word(int rank) {
+		StringBuilder word = new StringBuilder();
+		int value = rank;
+		do {
+			word.append(SYLLABLES[value % SYLLABLES.length]);
+			value /= SYLLABLES.length;
+		} while (value > 0);
+		if (rank >= SYLLABLES.length)
+			word.append('n');
+		return word.toString();
+	}
+
+	private static int clip(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+}
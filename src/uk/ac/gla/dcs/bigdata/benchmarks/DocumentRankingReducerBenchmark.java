@@ -0,0 +1,106 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import uk.ac.gla.dcs.bigdata.providedutilities.TextDistanceCalculator;
+import uk.ac.gla.dcs.bigdata.studentfunctions.DocumentRankingReducer;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+
+/**
+ * Microbenchmark of DocumentRankingReducer against the previous implementation
+ * (full sort of both sides, then a parallel title comparison for every
+ * remaining candidate) on large candidate lists. Titles are generated from a
+ * small vocabulary with a share of near-duplicates and tied scores, and the
+ * results of both implementations are checked to be identical.
+ */
+public class DocumentRankingReducerBenchmark {
+
+	static final int[] CANDIDATES = { 1000, 10000, 100000 };
+	static final int ITERATIONS = 10; // measured runs per size, after as many warm-up runs
+
+	public static void main(String[] args) throws Exception {
+		DocumentRankingReducer reducer = new DocumentRankingReducer();
+
+		System.out.println(String.format("%10s %14s %14s %10s", "candidates", "previous ms", "current ms", "speedup"));
+		for (int size : CANDIDATES) {
+			Random random = new Random(size);
+			List<RankedDocument> left = candidates(random, size / 2);
+			List<RankedDocument> right = candidates(random, size - size / 2);
+
+			long previousNanos = 0, currentNanos = 0;
+			for (int iteration = 0; iteration < 2 * ITERATIONS; iteration++) {
+				long start = System.nanoTime();
+				QueryRanking previous = previousReduce(new QueryRanking(0, new ArrayList<RankedDocument>(left)),
+						new QueryRanking(0, new ArrayList<RankedDocument>(right)));
+				long middle = System.nanoTime();
+				QueryRanking current = reducer.select(reducer.call(new QueryRanking(0, new ArrayList<RankedDocument>(left)),
+						new QueryRanking(0, new ArrayList<RankedDocument>(right))));
+				long end = System.nanoTime();
+
+				if (!docids(previous).equals(docids(current)))
+					throw new IllegalStateException("Rankings differ for " + size + " candidates: " + docids(previous)
+							+ " / " + docids(current));
+				if (iteration >= ITERATIONS) {
+					previousNanos += middle - start;
+					currentNanos += end - middle;
+				}
+			}
+			System.out.println(String.format("%10d %14.3f %14.3f %9.1fx", size, previousNanos / 1e6 / ITERATIONS,
+					currentNanos / 1e6 / ITERATIONS, (double) previousNanos / currentNanos));
+		}
+	}
+
+	// the reducer as it was before DiversifiedTopK
+	static QueryRanking previousReduce(QueryRanking v1, QueryRanking v2) {
+		Iterator<RankedDocument> allResults = Stream.concat(v1.getResults().stream(), v2.getResults().stream())
+				.sorted(Comparator.comparing(RankedDocument::getScore).reversed()).iterator();
+
+		List<RankedDocument> top10results = new ArrayList<RankedDocument>(10);
+		while (allResults.hasNext()) {
+			RankedDocument current = allResults.next();
+			if (top10results.size() < 10 && top10results.parallelStream().allMatch(
+					result -> TextDistanceCalculator.similarity(result.getTitle(), current.getTitle()) >= 0.5)) {
+				top10results.add(current);
+			}
+		}
+		v1.setResults(top10results);
+		return v1;
+	}
+
+	// candidates with titles of 4-12 words, 20% near-duplicates of an earlier title and scores with ties
+	static List<RankedDocument> candidates(Random random, int size) {
+		String[] vocabulary = new String[500];
+		for (int i = 0; i < vocabulary.length; i++)
+			vocabulary[i] = Integer.toString(i * 7919, 36);
+
+		List<RankedDocument> candidates = new ArrayList<RankedDocument>(size);
+		for (int i = 0; i < size; i++) {
+			String title;
+			if (i > 0 && random.nextDouble() < 0.2) {
+				title = candidates.get(random.nextInt(i)).getTitle() + " update";
+			} else {
+				StringBuilder builder = new StringBuilder();
+				int words = 4 + random.nextInt(9);
+				for (int w = 0; w < words; w++)
+					builder.append(w == 0 ? "" : " ").append(vocabulary[random.nextInt(vocabulary.length)]);
+				title = builder.toString();
+			}
+			double score = Math.round(random.nextDouble() * 1000) / 100.0;
+			candidates.add(new RankedDocument("doc-" + size + "-" + i, title, score));
+		}
+		return candidates;
+	}
+
+	static List<String> docids(QueryRanking ranking) {
+		List<String> docids = new ArrayList<String>();
+		for (RankedDocument document : ranking.getResults())
+			docids.add(document.getDocid());
+		return docids;
+	}
+}
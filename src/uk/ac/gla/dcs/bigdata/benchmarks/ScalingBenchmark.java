@@ -0,0 +1,121 @@
+package uk.ac.gla.dcs.bigdata.benchmarks;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.StageInfo;
+import org.apache.spark.sql.SparkSession;
+
+import uk.ac.gla.dcs.bigdata.apps.AssessedExercise;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineEncoders;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/**
+ * Runs AssessedExercise.rankDocuments over synthetic collections of increasing
+ * size (see CorpusGenerator) and records, for every <articles, queries>
+ * combination, the wall time, the time spent in each stage and the peak heap
+ * usage. As the run is in local mode, the heap holds the driver and the
+ * executors.
+ * 
+ * The sizes are set with BIGDATA_SCALE_ARTICLES (default
+ * 5000,50000,250000,1000000) and BIGDATA_SCALE_QUERIES (default 3,30,300,1000).
+ * Collections are generated once into BIGDATA_SCALE_DIR (default
+ * data/synthetic/) and reused, and the results are written to scaling.csv in
+ * that directory.
+ */
+public class ScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int[] articleCounts = sizes(System.getenv("BIGDATA_SCALE_ARTICLES"), "5000,50000,250000,1000000");
+		int[] queryCounts = sizes(System.getenv("BIGDATA_SCALE_QUERIES"), "3,30,300,1000");
+		String scaleDir = System.getenv("BIGDATA_SCALE_DIR");
+		File dir = new File(scaleDir == null ? "data/synthetic/" : scaleDir);
+		dir.mkdirs();
+
+		String sparkMaster = System.getenv("SPARK_MASTER");
+		if (sparkMaster == null) {
+			System.setProperty("hadoop.home.dir", new File("resources/hadoop/").getAbsolutePath());
+			sparkMaster = "local[2]";
+		}
+		SparkConf conf = new SparkConf().setMaster(sparkMaster).setAppName("ScalingBenchmark");
+		PipelineEncoders.configure(conf);
+		SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
+
+		// duration of the completed stages, by call site
+		Map<String, Long> stageMillis = new TreeMap<String, Long>();
+		spark.sparkContext().addSparkListener(new SparkListener() {
+			@Override
+			public void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+				StageInfo stage = stageCompleted.stageInfo();
+				if (stage.submissionTime().isDefined() && stage.completionTime().isDefined()) {
+					long millis = (Long) stage.completionTime().get() - (Long) stage.submissionTime().get();
+					synchronized (stageMillis) {
+						stageMillis.merge(stage.name(), millis, Long::sum);
+					}
+				}
+			}
+		});
+
+		try (PrintWriter report = new PrintWriter(new File(dir, "scaling.csv"), StandardCharsets.UTF_8.name())) {
+			report.println("articles,queries,wallMs,peakHeapMB,stageMs");
+			for (int articles : articleCounts) {
+				File newsFile = new File(dir, "news-" + articles + ".json");
+				if (!newsFile.exists())
+					new CorpusGenerator(articles).writeArticles(newsFile, articles);
+
+				for (int queries : queryCounts) {
+					File queryFile = new File(dir, "queries-" + queries + ".list");
+					if (!queryFile.exists())
+						new CorpusGenerator(queries).writeQueries(queryFile, queries);
+
+					System.gc();
+					for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+						pool.resetPeakUsage();
+					synchronized (stageMillis) {
+						stageMillis.clear();
+					}
+
+					long start = System.currentTimeMillis();
+					AssessedExercise.rankDocuments(spark, queryFile.getPath(), newsFile.getPath());
+					long wallMillis = System.currentTimeMillis() - start;
+					PipelineMetrics.awaitListeners(spark.sparkContext());
+
+					long peakHeap = 0;
+					for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+						if (pool.getType() == MemoryType.HEAP)
+							peakHeap += pool.getPeakUsage().getUsed();
+
+					StringBuilder stages = new StringBuilder();
+					synchronized (stageMillis) {
+						for (Map.Entry<String, Long> stage : stageMillis.entrySet())
+							stages.append(stages.length() == 0 ? "" : "; ").append(stage.getKey()).append('=')
+									.append(stage.getValue());
+					}
+					String line = String.format("%d,%d,%d,%d,\"%s\"", articles, queries, wallMillis, peakHeap >> 20, stages);
+					System.out.println(line);
+					report.println(line);
+					report.flush();
+				}
+			}
+		}
+
+		spark.close();
+	}
+
+	private static int[] sizes(String value, String defaultValue) {
+		String[] parts = (value == null ? defaultValue : value).split(",");
+		int[] sizes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			sizes[i] = Integer.parseInt(parts[i].trim());
+		return sizes;
+	}
+}
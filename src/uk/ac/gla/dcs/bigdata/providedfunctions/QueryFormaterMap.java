@@ -6,18 +6,18 @@ import org.apache.spark.api.java.function.MapFunction;
 import org.apache.spark.sql.Row;
 
 import uk.ac.gla.dcs.bigdata.providedstructures.Query;
-import uk.ac.gla.dcs.bigdata.providedutilities.TextPreProcessor;
+import uk.ac.gla.dcs.bigdata.studentutilities.SharedTextPreProcessor;
 
 public class QueryFormaterMap implements MapFunction<Row,Query> {
 
 	private static final long serialVersionUID = 6475166483071609772L;
 
-	private transient TextPreProcessor processor;
+	private transient SharedTextPreProcessor processor;
 	
 	@Override
 	public Query call(Row value) throws Exception {
 	
-		if (processor==null) processor = new TextPreProcessor();
+		if (processor==null) processor = SharedTextPreProcessor.get();
 		
 		String originalQuery = value.mkString();
 		
@@ -14,6 +14,12 @@ import com.google.common.base.Strings;
  */
 public class TextDistanceCalculator {
 
+	// LevenshteinDistance holds no state, so one instance serves all calls
+	private static final LevenshteinDistance LEVENSHTEIN = LevenshteinDistance.getDefaultInstance();
+
+	// per-thread row buffers for the bounded distance, grown on demand
+	private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
 	/**
 	 * Calculate the normalised distance between two strings. Outputs a value
 	 * between 0 and 1, where higher values indicate the texts are more dissimilar
@@ -27,8 +33,7 @@ public class TextDistanceCalculator {
 		if (Strings.isNullOrEmpty(textSnippet1)) textSnippet1=" ";
 		if (Strings.isNullOrEmpty(textSnippet2)) textSnippet2=" ";
 		
-		LevenshteinDistance ld = new LevenshteinDistance(); // apache.commons.text implementation of LevenshteinDistance
-		int editDistance = ld.apply(textSnippet1, textSnippet2); // calculate the edit distance
+		int editDistance = LEVENSHTEIN.apply(textSnippet1, textSnippet2); // calculate the edit distance
 		
 		// get the maximum length of the inputs for normalization
 		int maxCharLength = textSnippet1.length(); 
@@ -39,4 +44,93 @@ public class TextDistanceCalculator {
 		
 	}
 	
+	/**
+	 * Checks whether the normalised distance between two strings is below a
+	 * threshold, with the same result as similarity(textSnippet1, textSnippet2) &lt;
+	 * threshold. The edit distance is only computed up to the bound implied by the
+	 * threshold: no work is done when the length difference alone exceeds it, and
+	 * the computation stops as soon as every path exceeds it.
+	 * @param textSnippet1 - input text 1
+	 * @param textSnippet2 - input text 2
+	 * @param threshold - normalised distance the texts have to be below
+	 * @return
+	 */
+	public static boolean isSimilarityBelow(String textSnippet1, String textSnippet2, double threshold) {
+		
+		//to handle textual calculation of news article with title is null
+		if (Strings.isNullOrEmpty(textSnippet1)) textSnippet1=" ";
+		if (Strings.isNullOrEmpty(textSnippet2)) textSnippet2=" ";
+		
+		int maxCharLength = Math.max(textSnippet1.length(), textSnippet2.length());
+		
+		// largest edit distance that can still be below the threshold
+		double limit = threshold*maxCharLength;
+		if (limit <= 0) return false;
+		int bound = (int) Math.min(Math.floor(limit), maxCharLength);
+		
+		int editDistance = boundedDistance(textSnippet1, textSnippet2, bound);
+		if (editDistance > bound) return false;
+		
+		// same normalisation as similarity()
+		return (1.0*editDistance)/maxCharLength < threshold;
+	}
+	
+	/**
+	 * Levenshtein distance restricted to a diagonal band of width 2*bound+1
+	 * (Ukkonen), using the row buffers of the calling thread.
+	 * @return the edit distance, or bound+1 if it is larger than bound
+	 */
+	static int boundedDistance(CharSequence s, CharSequence t, int bound) {
+		int n = s.length();
+		int m = t.length();
+		
+		// s is the shorter input
+		if (n > m) {
+			CharSequence swap = s; s = t; t = swap;
+			n = m; m = t.length();
+		}
+		if (m - n > bound) return bound + 1;
+		
+		int[][] rows = ROWS.get();
+		if (rows[0].length < n + 1) {
+			rows = new int[2][Math.max(n + 1, rows[0].length * 2)];
+			ROWS.set(rows);
+		}
+		int[] p = rows[0]; // previous row
+		int[] d = rows[1]; // current row
+		
+		int boundary = Math.min(n, bound) + 1;
+		for (int i = 0; i < boundary; i++) p[i] = i;
+		for (int i = boundary; i <= n; i++) p[i] = Integer.MAX_VALUE;
+		for (int i = 0; i <= n; i++) d[i] = Integer.MAX_VALUE;
+		
+		for (int j = 1; j <= m; j++) {
+			char tj = t.charAt(j - 1);
+			d[0] = j;
+			
+			// only cells within bound of the diagonal can stay within bound
+			int min = Math.max(1, j - bound);
+			int max = j > Integer.MAX_VALUE - bound ? n : Math.min(n, j + bound);
+			if (min > max) return bound + 1;
+			if (min > 1) d[min - 1] = Integer.MAX_VALUE;
+			
+			int rowMinimum = min == 1 ? d[0] : Integer.MAX_VALUE;
+			for (int i = min; i <= max; i++) {
+				if (s.charAt(i - 1) == tj) {
+					d[i] = p[i - 1];
+				} else {
+					d[i] = 1 + Math.min(Math.min(d[i - 1], p[i]), p[i - 1]);
+				}
+				if (d[i] < rowMinimum) rowMinimum = d[i];
+			}
+			
+			// distances never decrease from one row to the next along a path
+			if (rowMinimum > bound) return bound + 1;
+			
+			int[] swap = p; p = d; d = swap;
+		}
+		
+		return p[n] <= bound ? p[n] : bound + 1;
+	}
+	
 }
@@ -1,113 +1,209 @@
 package uk.ac.gla.dcs.bigdata.studentfunctions;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
 
-import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
 import uk.ac.gla.dcs.bigdata.providedstructures.Query;
-import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
-import uk.ac.gla.dcs.bigdata.providedutilities.DPHScorer;
 import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
 import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryTermIndex;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.BatchDPHScorer;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
 
 /*
  * DPH score of <document, term> and average DPH score for a <document, query> pair will be calculated 
  * when FlatMapFunction is called for each document.
- * FlatMapFunction return an iterator of DocumentRanking 
- * where DocumentRanking class represents query and list of documents relevant to the query along with its DPH score.
+ * FlatMapFunction return an iterator of QueryRanking 
+ * where QueryRanking class represents query and list of documents (id, title and DPH score) relevant to the query.
+ * Only the queries sharing a term with the document are visited, looked up in a QueryTermIndex, and each term of 
+ * the document is scored once for all of them.
  */
 
-public class ArtcleDphFlatMap implements FlatMapFunction<NewsArticleInfo, DocumentRanking> {
+public class ArtcleDphFlatMap implements FlatMapFunction<NewsArticleInfo, QueryRanking> {
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = -9209047713513423001L;
 	Broadcast<List<Query>> queryList; // List of Queries (List<Queries>)
 	Broadcast<ArticleTermFreqDict> corpusTermDict; // term frequency dictionary within the corpus
+	Broadcast<TermDictionary> termDictionary; // term ids of the query vocabulary
 	long totalDocsInCorpus; // Number of documents in the corpus (size of Dataset< NewsArticle>)
 	long averageDocumentLengthInCorpus; // Average document length in the corpus
+	Broadcast<QueryTermIndex> queryTermIndex; // optional, queries of each term id, built per task if not given
+	PipelineMetrics metrics; // optional, counts the scored pairs and clamped scores
+
+	private transient QueryTermIndex index; // term ids of each query and queries of each term id
+	private transient int[] queryArticle; // the article (call number) a query was matched for
+	private transient int[] matchedQueries; // queries sharing a term with the current article
+	private transient BatchDPHScorer scorer; // dph with the per-term constants of the corpus
+	private transient double[] termDph; // dph score of each term id for the current article
+	private transient int[] termDphArticle; // the article (call number) termDph was calculated for
+	private transient int calls; // number of articles processed by this instance
+	private transient int[] articleTermIds; // query terms of the current article, scored as one batch
+	private transient int[] articleTermFrequencies;
+	private transient double[] articleTermDph;
 
 	/**
 	 * @param queryList
 	 * @param corpusTermDict
+	 * @param termDictionary
 	 * @param totalDocsInCorpus
 	 * @param averageDocumentLengthInCorpus
 	 */
 	public ArtcleDphFlatMap(Broadcast<List<Query>> queryList, Broadcast<ArticleTermFreqDict> corpusTermDict,
-			long totalDocsInCorpus, long averageDocumentLengthInCorpus) {
+			Broadcast<TermDictionary> termDictionary, long totalDocsInCorpus, long averageDocumentLengthInCorpus) {
 		super();
 		this.queryList = queryList;
 		this.corpusTermDict = corpusTermDict;
+		this.termDictionary = termDictionary;
 		this.totalDocsInCorpus = totalDocsInCorpus;
 		this.averageDocumentLengthInCorpus = averageDocumentLengthInCorpus;
 	}
 
+	/**
+	 * @param queryList
+	 * @param corpusTermDict
+	 * @param termDictionary
+	 * @param totalDocsInCorpus
+	 * @param averageDocumentLengthInCorpus
+	 * @param metrics
+	 */
+	public ArtcleDphFlatMap(Broadcast<List<Query>> queryList, Broadcast<ArticleTermFreqDict> corpusTermDict,
+			Broadcast<TermDictionary> termDictionary, long totalDocsInCorpus, long averageDocumentLengthInCorpus,
+			PipelineMetrics metrics) {
+		this(queryList, corpusTermDict, termDictionary, totalDocsInCorpus, averageDocumentLengthInCorpus);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param queryList
+	 * @param queryTermIndex
+	 * @param corpusTermDict
+	 * @param termDictionary
+	 * @param totalDocsInCorpus
+	 * @param averageDocumentLengthInCorpus
+	 * @param metrics
+	 */
+	public ArtcleDphFlatMap(Broadcast<List<Query>> queryList, Broadcast<QueryTermIndex> queryTermIndex,
+			Broadcast<ArticleTermFreqDict> corpusTermDict, Broadcast<TermDictionary> termDictionary,
+			long totalDocsInCorpus, long averageDocumentLengthInCorpus, PipelineMetrics metrics) {
+		this(queryList, corpusTermDict, termDictionary, totalDocsInCorpus, averageDocumentLengthInCorpus, metrics);
+		this.queryTermIndex = queryTermIndex;
+	}
+
+	// resolve the query terms to term ids and precompute the scoring constants once per task
+	private void initialise() {
+		TermDictionary dictionary = termDictionary.getValue();
+		List<Query> queries = queryList.getValue();
+
+		index = queryTermIndex != null ? queryTermIndex.getValue() : QueryTermIndex.build(queries, dictionary);
+		queryArticle = new int[queries.size()];
+		matchedQueries = new int[queries.size()];
+
+		long[] corpusTermFrequencies = new long[dictionary.size()];
+		for (int termId = 0; termId < corpusTermFrequencies.length; termId++)
+			corpusTermFrequencies[termId] = corpusTermDict.getValue().getTermFreqdict()
+					.getOrDefault(dictionary.getTerm(termId), (long) 0);
+		scorer = new BatchDPHScorer(corpusTermFrequencies, averageDocumentLengthInCorpus, totalDocsInCorpus);
+
+		termDph = new double[dictionary.size()];
+		termDphArticle = new int[dictionary.size()];
+		calls = 0;
+		articleTermIds = new int[dictionary.size()];
+		articleTermFrequencies = new int[dictionary.size()];
+		articleTermDph = new double[dictionary.size()];
+	}
+
 	@Override
-	public Iterator<DocumentRanking> call(NewsArticleInfo article) throws Exception {
-		long currentDocumentLength = article.getLengthOfDocument();
-		long totalTermFrequencyInCorpus = 0;
-		long termFrequencyInCurrentDocument = 0;
-		double dphValue = 0, avgDphValue = 0.0, queryArticleDph = 0;
+	public Iterator<QueryRanking> call(NewsArticleInfo article) throws Exception {
+		if (index == null)
+			initialise();
+		calls++;
 
-		// store dph scores between queries and current article
-		List<DocumentRanking> queryDphList = new ArrayList<DocumentRanking>();
+		int currentDocumentLength = (int) article.getLengthOfDocument();
+		double queryArticleDph = 0, avgDphValue = 0.0;
 
-		// store dph score for each term, avoiding multiple calculations
-		Map<String, Double> termDphMap = new HashMap<String, Double>();
+		// store dph scores between queries and current article
+		List<QueryRanking> queryDphList = new ArrayList<QueryRanking>();
+
+		// fetch term id frequencies from NewsArticleInfo, all of them are query terms
+		TermFrequencyMap termFrequencies = article.getTermFrequencies();
+		int[] keys = termFrequencies.getKeys();
+		int[] values = termFrequencies.getValues();
+		int articleTerms = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] >= 0) {
+				articleTermIds[articleTerms] = keys[slot];
+				articleTermFrequencies[articleTerms] = values[slot];
+				articleTerms++;
+			}
+		}
+		if (articleTerms == 0)
+			return queryDphList.iterator();
+
+		// calculate the dph score of every query term of the article in one batch
+		scorer.score(articleTermIds, articleTermFrequencies, currentDocumentLength, articleTermDph, articleTerms);
+		int clamps = 0; // NaN or infinite scores set to 0
+		for (int i = 0; i < articleTerms; i++) {
+			double dphValue = articleTermDph[i];
+			/*
+			 * If DPH score return is infinity, -infinity or other than numeric then set it
+			 * as 0
+			 */
+			if (Double.isNaN(dphValue) || Double.isInfinite(dphValue)) {
+				dphValue = 0.0;
+				clamps++;
+			}
+			termDph[articleTermIds[i]] = dphValue;
+			termDphArticle[articleTermIds[i]] = calls;
+		}
 
-		// fetch term frequency from NewsArticleInfo
-		Map<String, Long> termDict = article.getTermDict();
+		// only the queries sharing a term with the article are visited
+		int matched = 0;
+		for (int i = 0; i < articleTerms; i++) {
+			for (int queryIndex : index.getQueries(articleTermIds[i])) {
+				if (queryArticle[queryIndex] != calls) {
+					queryArticle[queryIndex] = calls;
+					matchedQueries[matched++] = queryIndex;
+				}
+			}
+		}
 
-		// iterate over Query List to identify whether news article contains query terms
-		// or not
-		Iterator<Query> queryIterator = queryList.getValue().parallelStream()
-				.filter(query -> !Collections.disjoint(query.getQueryTerms(), termDict.keySet())).iterator();
+		for (int m = 0; m < matched; m++) {
+			int queryIndex = matchedQueries[m];
+			int[] termIds = index.getTermIds(queryIndex);
 
-		while (queryIterator.hasNext()) {
-			Query query = queryIterator.next();
-			// get all query terms
-			List<String> queryTerms = query.getQueryTerms();
-			// iterate over query terms and calculate dph score for a <document,term>
+			// a query term that is not in the article scores 0
 			queryArticleDph = 0;
-			for (String term : queryTerms) {
-				// use term dph score directly if it has been calculated
-				if (termDphMap.keySet().contains(term)) {
-					queryArticleDph += termDphMap.get(term);
-					continue;
-				}
-				totalTermFrequencyInCorpus = corpusTermDict.getValue().getTermFreqdict().getOrDefault(term, (long) 0);
-				termFrequencyInCurrentDocument = termDict.getOrDefault(term, (long) 0);
-
-				dphValue = DPHScorer.getDPHScore((short) termFrequencyInCurrentDocument,
-						(int) totalTermFrequencyInCorpus, (int) currentDocumentLength, averageDocumentLengthInCorpus,
-						totalDocsInCorpus);
-				/*
-				 * If DPH score return is infinity, -infinity or other than numeric then set it
-				 * as 0
-				 */
-				if (Double.isNaN(dphValue) || Double.isInfinite(dphValue))
-					dphValue = 0.0;
-
-				termDphMap.put(term, dphValue);
-				queryArticleDph += dphValue;
+			for (int termId : termIds) {
+				if (termId >= 0 && termDphArticle[termId] == calls)
+					queryArticleDph += termDph[termId];
 			}
+
 			// To calculate DPH score for a <document,query> pair - find the average of the
 			// DPH scores for each <document,term> pair
-			avgDphValue = queryArticleDph / queryTerms.size();
+			avgDphValue = queryArticleDph / termIds.length;
 
-			List<RankedResult> result = new ArrayList<RankedResult>(1);
-			result.add(new RankedResult(article.getId(), article.getArticle(), avgDphValue));
+			List<RankedDocument> result = new ArrayList<RankedDocument>(1);
+			result.add(new RankedDocument(article.getId(), article.getTitle(), avgDphValue, article.getClusterId()));
 
-			DocumentRanking articleDphResults = new DocumentRanking(query, result);
+			QueryRanking articleDphResults = new QueryRanking(queryIndex, result);
 			queryDphList.add(articleDphResults);
 		}
+
+		if (metrics != null) {
+			metrics.addScoredPairs(queryDphList.size());
+			if (clamps > 0)
+				metrics.addDphClamps(clamps);
+		}
 		return queryDphList.iterator();
 	}
 }
@@ -0,0 +1,50 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.Set;
+
+import org.apache.spark.api.java.function.FilterFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Row;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/*
+ * FilterFunction which keeps the Json news article rows whose id is in a broadcast set of ids. Only the top level 
+ * "id" field is read with a streaming parser, so the articles that are not needed are never bound to NewsArticle objects.
+ */
+public class ArticleIdFilter implements FilterFunction<Row> {
+
+	private static final long serialVersionUID = -2967315306307152532L;
+
+	private transient JsonFactory jsonFactory;
+	Broadcast<Set<String>> docids; // ids of the articles to keep
+
+	/**
+	 * @param docids
+	 */
+	public ArticleIdFilter(Broadcast<Set<String>> docids) {
+		super();
+		this.docids = docids;
+	}
+
+	@Override
+	public boolean call(Row value) throws Exception {
+		if (jsonFactory == null)
+			jsonFactory = new JsonFactory();
+
+		try (JsonParser parser = jsonFactory.createParser(value.getString(0))) {
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("id".equals(field))
+					return docids.getValue().contains(parser.getValueAsString());
+				parser.skipChildren();
+			}
+		}
+		return false;
+	}
+}
@@ -9,11 +9,14 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
 import org.apache.spark.util.LongAccumulator;
 
 import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
-import uk.ac.gla.dcs.bigdata.providedutilities.TextPreProcessor;
 import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.SharedTextPreProcessor;
 
 //MapFunction which retrieve essential information (mainly id, title, and content fields of a document) needed to fulfil the task 
 //from every NewsArticle and return NewsArticleInfo object
@@ -24,20 +27,36 @@ public class ArticleInfoFlatMap implements FlatMapFunction<NewsArticle, NewsArti
 
 	private static final long serialVersionUID = 3298702966660325281L;
 
-	private transient TextPreProcessor processor;
-	LongAccumulator articleLengthAccumulator;
+	private transient SharedTextPreProcessor processor; // pre-processor shared by all tasks of the executor
+	LongAccumulator articleLengthAccumulator; // optional, sums the document lengths
+	Broadcast<TermDictionary> termDictionary; // when set, only term ids of the dictionary are kept
+
+	public ArticleInfoFlatMap() {
+		super();
+	}
 
 	public ArticleInfoFlatMap(LongAccumulator articleLengthAccumulator) {
 		super();
 		this.articleLengthAccumulator = articleLengthAccumulator;
 	}
 
+	public ArticleInfoFlatMap(Broadcast<TermDictionary> termDictionary) {
+		super();
+		this.termDictionary = termDictionary;
+	}
+
+	public ArticleInfoFlatMap(LongAccumulator articleLengthAccumulator, Broadcast<TermDictionary> termDictionary) {
+		super();
+		this.articleLengthAccumulator = articleLengthAccumulator;
+		this.termDictionary = termDictionary;
+	}
+
 	@Override
 	public Iterator<NewsArticleInfo> call(NewsArticle value) throws Exception {
 		List<String> terms;
 
 		if (processor == null)
-			processor = new TextPreProcessor();
+			processor = SharedTextPreProcessor.get();
 
 		String title = value.getTitle();
 		
@@ -66,7 +85,23 @@ public class ArticleInfoFlatMap implements FlatMapFunction<NewsArticle, NewsArti
 
 		// accumulate total number of terms after pre-processing the title and first 5
 		// paragraphs
-		articleLengthAccumulator.add(lengthOfDocument);
+		if (articleLengthAccumulator != null)
+			articleLengthAccumulator.add(lengthOfDocument);
+
+		List<NewsArticleInfo> infoList = new ArrayList<NewsArticleInfo>(1);
+		if (termDictionary != null) {
+			// compact term id frequencies, terms outside the dictionary can never be scored
+			TermDictionary dictionary = termDictionary.getValue();
+			TermFrequencyMap termFrequencies = new TermFrequencyMap();
+			for (String term : terms) {
+				int termId = dictionary.getId(term);
+				if (termId != TermDictionary.UNKNOWN_TERM)
+					termFrequencies.add(termId, 1);
+			}
+			// the article itself is not carried through scoring, it is looked up for the final results only
+			infoList.add(new NewsArticleInfo(value.getId(), title, null, termFrequencies, lengthOfDocument));
+			return infoList.iterator();
+		}
 
 		// term dictionary
 		Map<String, Long> termDict = new HashMap<String, Long>();
@@ -74,7 +109,6 @@ public class ArticleInfoFlatMap implements FlatMapFunction<NewsArticle, NewsArti
 			termDict.put(term, termDict.getOrDefault(term, (long) 0) + 1);
 		}
 		
-		List<NewsArticleInfo> infoList = new ArrayList<NewsArticleInfo>(1);
 		infoList.add(new NewsArticleInfo(value.getId(), title, value, termDict, lengthOfDocument));
 		return infoList.iterator();
 	}
@@ -0,0 +1,95 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import uk.ac.gla.dcs.bigdata.apps.BinaryCorpus;
+import uk.ac.gla.dcs.bigdata.studentstructures.DocumentRange;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+
+/*
+ * FlatMapFunction which reads a range of documents of a binary corpus through a memory-mapped buffer and returns 
+ * them as compact NewsArticleInfo. The corpus term ids are translated to query term ids with a broadcast array, 
+ * terms outside the query vocabulary are dropped as in ArticleInfoFlatMap.
+ */
+public class BinaryCorpusFlatMap implements FlatMapFunction<DocumentRange, NewsArticleInfo> {
+
+	private static final long serialVersionUID = 4075325936254708761L;
+
+	String corpusFile; // path of corpus.bin
+	Broadcast<int[]> queryTermIds; // query term id of every corpus term id, or UNKNOWN_TERM
+	private transient byte[] text; // buffer of the strings being decoded
+
+	/**
+	 * @param corpusFile
+	 * @param queryTermIds
+	 */
+	public BinaryCorpusFlatMap(String corpusFile, Broadcast<int[]> queryTermIds) {
+		super();
+		this.corpusFile = corpusFile;
+		this.queryTermIds = queryTermIds;
+	}
+
+	@Override
+	public Iterator<NewsArticleInfo> call(DocumentRange range) throws Exception {
+		int[] termIds = queryTermIds.getValue();
+		List<NewsArticleInfo> articles = new ArrayList<NewsArticleInfo>(range.getEnd() - range.getFirst());
+
+		try (FileChannel channel = FileChannel.open(new File(corpusFile).toPath())) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryCorpus.HEADER_LENGTH);
+			header.position(12);
+			long offsetsPosition = header.getLong();
+
+			// offsets of the range, and the records between the first and the end offset
+			LongBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsPosition + 8L * range.getFirst(),
+					8L * (range.getEnd() - range.getFirst() + 1)).asLongBuffer();
+			long start = offsets.get(0);
+			ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, start,
+					offsets.get(range.getEnd() - range.getFirst()) - start);
+
+			while (records.hasRemaining()) {
+				int lengthOfDocument = records.getInt();
+				int distinct = records.getInt();
+
+				// term ids first, then the frequencies in the same order
+				TermFrequencyMap termFrequencies = new TermFrequencyMap();
+				int termPosition = records.position();
+				int frequencyPosition = termPosition + 4 * distinct;
+				for (int i = 0; i < distinct; i++) {
+					int termId = termIds[records.getInt(termPosition + 4 * i)];
+					if (termId != TermDictionary.UNKNOWN_TERM)
+						termFrequencies.add(termId, records.getInt(frequencyPosition + 4 * i));
+				}
+				records.position(frequencyPosition + 4 * distinct);
+
+				String id = readString(records);
+				String title = readString(records);
+
+				articles.add(new NewsArticleInfo(id, title, null, termFrequencies, lengthOfDocument));
+			}
+		}
+		return articles.iterator();
+	}
+
+	// a string written as its length (-1 for null) and its UTF-8 bytes
+	private String readString(ByteBuffer records) {
+		int length = records.getInt();
+		if (length < 0)
+			return null;
+		if (text == null || text.length < length)
+			text = new byte[Math.max(length, text == null ? 256 : 2 * text.length)];
+		records.get(text, 0, length);
+		return new String(text, 0, length, StandardCharsets.UTF_8);
+	}
+}
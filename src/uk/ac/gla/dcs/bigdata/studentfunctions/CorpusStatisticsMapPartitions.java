@@ -0,0 +1,122 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.spark.api.java.function.MapPartitionsFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.BatchDPHScorer;
+
+/*
+ * MapPartitionsFunction which gathers the corpus statistics of a partition in one pass over its articles: the number 
+ * of articles, their total length and the frequency of the query terms. Each partition returns a single partial 
+ * CorpusTermStatistics, the final reduce merges them. Unlike an accumulator, the statistics are part of the result 
+ * of the job, so they are counted exactly once even when tasks are re-executed.
+ * The score lines used for pruning only depend on the <term frequency, document length> pair, so the pairs of each 
+ * term are buffered, and the line of each distinct pair is calculated when the buffer is flushed. The lines are only 
+ * gathered when computeLines is set, as they are not needed when the articles are ranked without pruning.
+ */
+public class CorpusStatisticsMapPartitions implements MapPartitionsFunction<NewsArticleInfo, CorpusTermStatistics> {
+
+	private static final long serialVersionUID = 4630279818563107842L;
+
+	static final int PAIR_BUFFER = 4096; // maximum <term frequency, document length> pairs buffered per term
+
+	Broadcast<TermDictionary> termDictionary; // vocabulary of all queries
+	boolean computeLines; // whether to gather the score lines used for pruning
+
+	/**
+	 * @param termDictionary
+	 */
+	public CorpusStatisticsMapPartitions(Broadcast<TermDictionary> termDictionary) {
+		this(termDictionary, true);
+	}
+
+	/**
+	 * @param termDictionary
+	 * @param computeLines   - whether to gather the score lines of the query terms
+	 */
+	public CorpusStatisticsMapPartitions(Broadcast<TermDictionary> termDictionary, boolean computeLines) {
+		super();
+		this.termDictionary = termDictionary;
+		this.computeLines = computeLines;
+	}
+
+	@Override
+	public Iterator<CorpusTermStatistics> call(Iterator<NewsArticleInfo> articles) throws Exception {
+		TermDictionary dictionary = termDictionary.getValue();
+
+		long partitionDocs = 0, partitionLength = 0;
+		// frequency of each query term within the partition, indexed by term id
+		long[] partitionFrequencies = new long[dictionary.size()];
+		// <term frequency, document length> pairs of each term since its last flush, and its dominant lines
+		long[][] pairs = new long[dictionary.size()][];
+		int[] pairCounts = new int[dictionary.size()];
+		double[][] lines = new double[dictionary.size()][];
+		while (articles.hasNext()) {
+			NewsArticleInfo article = articles.next();
+			partitionDocs++;
+			partitionLength += article.getLengthOfDocument();
+
+			TermFrequencyMap termFrequencies = article.getTermFrequencies();
+			int[] keys = termFrequencies.getKeys();
+			int[] values = termFrequencies.getValues();
+			for (int slot = 0; slot < keys.length; slot++) {
+				int termId = keys[slot];
+				if (termId < 0)
+					continue;
+				partitionFrequencies[termId] += values[slot];
+				if (!computeLines)
+					continue;
+
+				// the buffer grows up to PAIR_BUFFER, rare terms keep a small one
+				if (pairs[termId] == null)
+					pairs[termId] = new long[16];
+				else if (pairCounts[termId] == pairs[termId].length) {
+					if (pairs[termId].length < PAIR_BUFFER) {
+						pairs[termId] = Arrays.copyOf(pairs[termId], pairs[termId].length * 2);
+					} else {
+						lines[termId] = flush(pairs[termId], pairCounts[termId], lines[termId]);
+						pairCounts[termId] = 0;
+					}
+				}
+				pairs[termId][pairCounts[termId]++] = ((long) values[slot] << 32) | article.getLengthOfDocument();
+			}
+		}
+
+		Map<String, Long> partitionTermDict = new HashMap<String, Long>(dictionary.size() * 2);
+		Map<String, double[]> partitionLines = computeLines ? new HashMap<String, double[]>(dictionary.size() * 2) : null;
+		for (int termId = 0; termId < partitionFrequencies.length; termId++) {
+			if (partitionFrequencies[termId] > 0) {
+				partitionTermDict.put(dictionary.getTerm(termId), partitionFrequencies[termId]);
+				if (computeLines)
+					partitionLines.put(dictionary.getTerm(termId), flush(pairs[termId], pairCounts[termId], lines[termId]));
+			}
+		}
+		return Collections.singletonList(
+				new CorpusTermStatistics(partitionDocs, partitionLength, partitionTermDict, partitionLines)).iterator();
+	}
+
+	// adds the lines of the distinct buffered pairs to the dominant lines of a term
+	private double[] flush(long[] pairs, int count, double[] lines) {
+		Arrays.sort(pairs, 0, count);
+		int previous = lines == null ? 0 : lines.length;
+		double[] merged = lines == null ? new double[2 * count] : Arrays.copyOf(lines, previous + 2 * count);
+		int size = previous / 2;
+		for (int i = 0; i < count; i++) {
+			if (i > 0 && pairs[i] == pairs[i - 1])
+				continue;
+			BatchDPHScorer.line((int) (pairs[i] >>> 32), (int) pairs[i], merged, 2 * size);
+			size++;
+		}
+		return BatchDPHScorer.dominantLines(merged, size);
+	}
+}
@@ -1,41 +1,99 @@
 package uk.ac.gla.dcs.bigdata.studentfunctions;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Stream;
 
 import org.apache.spark.api.java.function.ReduceFunction;
 
-import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
-import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
-import uk.ac.gla.dcs.bigdata.providedutilities.TextDistanceCalculator;
+import uk.ac.gla.dcs.bigdata.studentstructures.DiversifiedTopK;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
 
 /*
  * ReduceGroup function takes document list relevant to the query, removing unneeded redundancy by using the provided comparison 
  * function and rank the top 10 most relevant articles by comparing their DPH score.
+ * Selection is done with DiversifiedTopK, which only orders the candidates until 10 non-duplicates are found, and 
+ * title comparisons are cached across calls as the same top articles are compared again on every merge.
+ * A merge keeps the prefix of the candidates (see DiversifiedTopK.prefix) rather than the top 10, as another merge may 
+ * still need the near-duplicates among them, and raises the threshold to the highest score it dropped. The top 10 are 
+ * only taken by select, once all candidates of a query are merged.
  */
-public class DocumentRankingReducer implements ReduceFunction<DocumentRanking>   {
+public class DocumentRankingReducer implements ReduceFunction<QueryRanking>   {
 	private static final long serialVersionUID = -6733172008502653353L;
 
+	static final int MEMO_CAPACITY = 65536; // title pairs cached per reducer instance
+
+	PipelineMetrics metrics; // optional, counts the title comparisons
+	private transient DiversifiedTopK.SimilarityMemo memo;
+
+	public DocumentRankingReducer() {
+		super();
+	}
+
+	/**
+	 * @param metrics
+	 */
+	public DocumentRankingReducer(PipelineMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
 	@Override
-	public DocumentRanking call(DocumentRanking v1, DocumentRanking v2) throws Exception {
-		
-		// Using LinkedHashMap to store the dph-sorted articles 
-		Iterator<RankedResult> allResults = Stream.concat(v1.getResults().stream(), v2.getResults().stream())
-				.sorted(Comparator.comparing(RankedResult::getScore).reversed()) 
-				.iterator();
-		
-		// Select the top10 articles from sorted map and filter the redundancy by using TextDistanceCalculator
-		List<RankedResult> top10results = new ArrayList<RankedResult>(10);
-		while (allResults.hasNext()) {
-			RankedResult current = allResults.next();
-			if (top10results.size() < 10 && top10results.parallelStream().allMatch(result -> TextDistanceCalculator.similarity(result.getArticle().getTitle(), current.getArticle().getTitle()) >= 0.5)) {
-				top10results.add(current);
-			}
+	public QueryRanking call(QueryRanking v1, QueryRanking v2) throws Exception {
+		if (memo == null)
+			memo = new DiversifiedTopK.SimilarityMemo(MEMO_CAPACITY);
+
+		// candidates of both sides, v1 first so that equal scores keep their order
+		long comparisons = memo.getComparisons();
+		DiversifiedTopK top10 = new DiversifiedTopK(10, memo);
+		top10.addAll(v1.getResults());
+		top10.addAll(v2.getResults());
+
+		v1.setResults(top10.prefix());
+		v1.setThreshold(Math.max(Math.max(v1.getThreshold(), v2.getThreshold()), top10.droppedScore()));
+		if (metrics != null)
+			metrics.addTitleComparisons(memo.getComparisons() - comparisons);
+		return v1;
+	}
+
+	/**
+	 * Merges the candidates of two rankings without dropping any of them, for rankings that must consider every
+	 * candidate of a query
+	 * 
+	 * @param v1
+	 * @param v2
+	 * @return v1 with the candidates of both rankings
+	 */
+	public QueryRanking union(QueryRanking v1, QueryRanking v2) {
+		// appended in place, as v1 accumulates the candidates of a whole partition
+		List<RankedDocument> results = v1.getResults();
+		if (!(results instanceof ArrayList)) {
+			results = new ArrayList<RankedDocument>(results);
+			v1.setResults(results);
 		}
-		v1.setResults(top10results);;
+		results.addAll(v2.getResults());
+		v1.setThreshold(Math.max(v1.getThreshold(), v2.getThreshold()));
 		return v1;
 	}
+
+	/**
+	 * Selects the top 10 of the merged candidates of a query
+	 * 
+	 * @param ranking
+	 * @return the ranking with its top 10 articles
+	 */
+	public QueryRanking select(QueryRanking ranking) {
+		if (memo == null)
+			memo = new DiversifiedTopK.SimilarityMemo(MEMO_CAPACITY);
+
+		long comparisons = memo.getComparisons();
+		DiversifiedTopK top10 = new DiversifiedTopK(10, memo);
+		top10.addAll(ranking.getResults());
+
+		ranking.setResults(top10.topK());
+		if (metrics != null)
+			metrics.addTitleComparisons(memo.getComparisons() - comparisons);
+		return ranking;
+	}
 }
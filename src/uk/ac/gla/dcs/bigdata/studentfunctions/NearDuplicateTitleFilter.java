@@ -0,0 +1,39 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import org.apache.spark.api.java.function.FilterFunction;
+import org.apache.spark.sql.Row;
+
+import uk.ac.gla.dcs.bigdata.providedutilities.TextDistanceCalculator;
+import uk.ac.gla.dcs.bigdata.studentstructures.DiversifiedTopK;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/*
+ * FilterFunction which verifies a candidate near-duplicate pair with the same test as the ranking: keeps the rows 
+ * whose "title1" and "title2" columns are at a title distance below 0.5.
+ */
+public class NearDuplicateTitleFilter implements FilterFunction<Row> {
+
+	private static final long serialVersionUID = -1374518392735126260L;
+
+	PipelineMetrics metrics; // optional, counts the title comparisons
+
+	public NearDuplicateTitleFilter() {
+		super();
+	}
+
+	/**
+	 * @param metrics
+	 */
+	public NearDuplicateTitleFilter(PipelineMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public boolean call(Row pair) throws Exception {
+		if (metrics != null)
+			metrics.addTitleComparisons(1);
+		return TextDistanceCalculator.isSimilarityBelow(pair.getAs("title1"), pair.getAs("title2"),
+				DiversifiedTopK.NEAR_DUPLICATE_DISTANCE);
+	}
+}
@@ -0,0 +1,162 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.sql.Row;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.ContentItem;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/*
+ * FlatMapFunction which converts a Row containing a String Json news article into a NewsArticle holding only the
+ * fields needed for scoring: id, title and the first five contents with subtype "paragraph". The Json is read with a
+ * streaming parser, so the other fields and content items (images, bios, kickers, captions...) are skipped without
+ * being bound to objects, and parsing stops as soon as the id, the title and five paragraphs have been read.
+ * Articles with a null or missing title are dropped, as ArticleInfoFlatMap would exclude them anyway.
+ */
+public class NewsArticleParserFlatMap implements FlatMapFunction<Row, NewsArticle> {
+
+	private static final long serialVersionUID = 5136018817256447914L;
+
+	private static final int PARAGRAPHS = 5; // number of paragraphs used for scoring
+
+	// optional, counts the articles dropped for a null title. The count is made while parsing, so
+	// articles parsed again (a cached partition evicted under a memory-only storage level and
+	// recomputed, or the parse evaluated by several actions) are counted again
+	PipelineMetrics metrics;
+	private transient JsonFactory jsonFactory;
+
+	public NewsArticleParserFlatMap() {
+		super();
+	}
+
+	/**
+	 * @param metrics
+	 */
+	public NewsArticleParserFlatMap(PipelineMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Iterator<NewsArticle> call(Row value) throws Exception {
+		if (jsonFactory == null)
+			jsonFactory = new JsonFactory();
+
+		String id = null;
+		String title = null;
+		boolean titleRead = false;
+		List<ContentItem> paragraphs = null;
+
+		try (JsonParser parser = jsonFactory.createParser(value.getString(0))) {
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return Collections.emptyIterator();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("id".equals(field)) {
+					id = scalarValue(parser);
+				} else if ("title".equals(field)) {
+					title = scalarValue(parser);
+					if (title == null)
+						return nullTitle(); // nothing else is needed
+					titleRead = true;
+				} else if ("contents".equals(field) && token == JsonToken.START_ARRAY) {
+					// once the id and title are known the array does not need to be read to its end
+					boolean stopAtLimit = id != null && titleRead;
+					paragraphs = readParagraphs(parser, stopAtLimit);
+					if (stopAtLimit && paragraphs.size() == PARAGRAPHS)
+						break; // the rest of the article is not used
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+
+		if (!titleRead)
+			return nullTitle();
+
+		NewsArticle article = new NewsArticle();
+		article.setId(id);
+		article.setTitle(title);
+		article.setContents(paragraphs);
+
+		List<NewsArticle> articleList = new ArrayList<NewsArticle>(1);
+		articleList.add(article);
+		return articleList.iterator();
+	}
+
+	private Iterator<NewsArticle> nullTitle() {
+		if (metrics != null)
+			metrics.addNullTitleArticles(1);
+		return Collections.emptyIterator();
+	}
+
+	/**
+	 * Reads the content items of the "contents" array, keeping the first ones with
+	 * subtype "paragraph". The parser is left on the end of the array, or on the
+	 * end of the last kept paragraph if the limit was reached and stopAtLimit is set.
+	 * 
+	 * @param parser - positioned on the start of the array
+	 * @param stopAtLimit - whether to return without reading the rest of the array
+	 * @return
+	 * @throws Exception
+	 */
+	private List<ContentItem> readParagraphs(JsonParser parser, boolean stopAtLimit) throws Exception {
+		List<ContentItem> paragraphs = new ArrayList<ContentItem>(PARAGRAPHS);
+
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token != JsonToken.START_OBJECT || paragraphs.size() == PARAGRAPHS) {
+				parser.skipChildren();
+				continue;
+			}
+
+			String content = null;
+			String subtype = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("content".equals(field))
+					content = scalarValue(parser);
+				else if ("subtype".equals(field))
+					subtype = scalarValue(parser);
+				else
+					parser.skipChildren();
+			}
+
+			if (subtype != null && subtype.equalsIgnoreCase("paragraph")) {
+				ContentItem paragraph = new ContentItem();
+				paragraph.setContent(content);
+				paragraph.setSubtype(subtype);
+				paragraphs.add(paragraph);
+				if (stopAtLimit && paragraphs.size() == PARAGRAPHS)
+					return paragraphs;
+			}
+		}
+		return paragraphs;
+	}
+
+	/**
+	 * @param parser - positioned on a value
+	 * @return the value as a String, or null if it is null, an object or an array,
+	 *         which is skipped so that the parser is left on its end
+	 * @throws Exception
+	 */
+	private static String scalarValue(JsonParser parser) throws Exception {
+		if (parser.currentToken() == JsonToken.START_OBJECT || parser.currentToken() == JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return null;
+		}
+		return parser.getValueAsString();
+	}
+}
@@ -0,0 +1,82 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.api.java.function.MapPartitionsFunction;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.DiversifiedTopK;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/*
+ * MapPartitionsFunction which reduces the scored articles of a partition to a small candidate set per query before the shuffle,
+ * returning one QueryRanking per query and partition.
+ * Candidates are sorted by DPH score and kept until k of them are dissimilar to every higher scored kept candidate, 
+ * together with the near-duplicates passed on the way, as the article that made them a duplicate may itself be 
+ * filtered out once the candidates of all partitions are merged. The candidates below that point can still be needed: 
+ * an article of another partition can be a near-duplicate of several kept ones and leave room for them. So each 
+ * QueryRanking carries as threshold the highest score it dropped, and the caller ranks a query again from all its 
+ * candidates when its merged 10th article scores lower (see AssessedExercise.rankArticles).
+ */
+public class PartialTopKMapPartitions implements MapPartitionsFunction<QueryRanking, QueryRanking> {
+
+	private static final long serialVersionUID = 3862941519846212076L;
+
+	static final int PRUNE_INTERVAL = 1024; // candidates added per query between two prunes
+	static final int MEMO_CAPACITY = 65536; // title pairs cached per partition
+
+	int k; // number of articles returned per query
+	PipelineMetrics metrics; // optional, counts the title comparisons
+
+	/**
+	 * @param k
+	 */
+	public PartialTopKMapPartitions(int k) {
+		super();
+		this.k = k;
+	}
+
+	/**
+	 * @param k
+	 * @param metrics
+	 */
+	public PartialTopKMapPartitions(int k, PipelineMetrics metrics) {
+		super();
+		this.k = k;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Iterator<QueryRanking> call(Iterator<QueryRanking> rankings) throws Exception {
+		DiversifiedTopK.SimilarityMemo memo = new DiversifiedTopK.SimilarityMemo(MEMO_CAPACITY);
+		Map<Integer, DiversifiedTopK> candidates = new HashMap<Integer, DiversifiedTopK>();
+
+		while (rankings.hasNext()) {
+			QueryRanking ranking = rankings.next();
+			DiversifiedTopK queryCandidates = candidates.get(ranking.getQueryId());
+			if (queryCandidates == null) {
+				queryCandidates = new DiversifiedTopK(k, memo);
+				candidates.put(ranking.getQueryId(), queryCandidates);
+			}
+			queryCandidates.addAll(ranking.getResults());
+
+			// keep the buffer of broad queries bounded
+			if (queryCandidates.pending() >= PRUNE_INTERVAL)
+				queryCandidates.compact();
+		}
+
+		List<QueryRanking> partialRankings = new ArrayList<QueryRanking>(candidates.size());
+		for (Map.Entry<Integer, DiversifiedTopK> entry : candidates.entrySet()) {
+			QueryRanking ranking = new QueryRanking(entry.getKey(), entry.getValue().prefix());
+			ranking.setThreshold(entry.getValue().droppedScore());
+			partialRankings.add(ranking);
+		}
+		if (metrics != null)
+			metrics.addTitleComparisons(memo.getComparisons());
+		return partialRankings.iterator();
+	}
+}
@@ -0,0 +1,32 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.api.java.function.FlatMapFunction;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.Posting;
+
+/*
+ * FlatMapFunction which inverts the term frequency dictionary of an article, emitting one Posting 
+ * <term, docid, term frequency, document length> for every distinct term within the article.
+ */
+public class PostingFlatMap implements FlatMapFunction<NewsArticleInfo, Posting> {
+
+	private static final long serialVersionUID = -2049733170468390512L;
+
+	@Override
+	public Iterator<Posting> call(NewsArticleInfo article) throws Exception {
+		Map<String, Long> termDict = article.getTermDict();
+
+		List<Posting> postings = new ArrayList<Posting>(termDict.size());
+		for (Map.Entry<String, Long> entry : termDict.entrySet()) {
+			postings.add(new Posting(entry.getKey(), article.getId(), entry.getValue().intValue(),
+					article.getLengthOfDocument()));
+		}
+		return postings.iterator();
+	}
+}
@@ -0,0 +1,46 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.Iterator;
+
+import org.apache.spark.api.java.function.MapGroupsFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.Posting;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+
+/*
+ * MapGroupsFunction which rebuilds a NewsArticleInfo from the postings of a single article read back from the 
+ * inverted index. As only the postings of query terms are read, the resulting term frequencies hold query terms 
+ * only, which is all that ArtcleDphFlatMap needs. The article itself is attached later by joining with the 
+ * document store of the index.
+ */
+public class PostingGroupMap implements MapGroupsFunction<String, Posting, NewsArticleInfo> {
+
+	private static final long serialVersionUID = 8147029395627318464L;
+
+	Broadcast<TermDictionary> termDictionary; // vocabulary of all queries
+
+	/**
+	 * @param termDictionary
+	 */
+	public PostingGroupMap(Broadcast<TermDictionary> termDictionary) {
+		super();
+		this.termDictionary = termDictionary;
+	}
+
+	@Override
+	public NewsArticleInfo call(String docid, Iterator<Posting> postings) throws Exception {
+		TermDictionary dictionary = termDictionary.getValue();
+		TermFrequencyMap termFrequencies = new TermFrequencyMap();
+		long lengthOfDocument = 0;
+
+		while (postings.hasNext()) {
+			Posting posting = postings.next();
+			termFrequencies.add(dictionary.getId(posting.getTerm()), posting.getTermFrequency());
+			lengthOfDocument = posting.getLengthOfDocument();
+		}
+		return new NewsArticleInfo(docid, null, null, termFrequencies, lengthOfDocument);
+	}
+}
@@ -0,0 +1,242 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.api.java.function.MapPartitionsFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.DiversifiedTopK;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryTermIndex;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentutilities.BatchDPHScorer;
+import uk.ac.gla.dcs.bigdata.studentutilities.PipelineMetrics;
+
+/*
+ * MapPartitionsFunction which scores the articles of a partition with MaxScore style dynamic pruning, and reduces them
+ * to the same candidate set per query as PartialTopKMapPartitions.
+ * Each query term has an upper bound: its highest DPH score over the corpus, from the score lines gathered with the
+ * corpus statistics. Each query keeps a threshold, the score of its k-th selected candidate in the partition so far.
+ * The bound of an article for a query is the average of the bounds of the query terms it contains; when it is below
+ * the threshold the article cannot enter the query's candidates and is not scored for it, and a term is only scored
+ * if one of the queries it belongs to was not pruned.
+ * Because of near-duplicate filtering the threshold of a query can drop again as candidates are added, so each
+ * QueryRanking returns as threshold the highest score below which an article may have been skipped: the highest
+ * threshold that was used, or the highest score of a candidate left out of the prefix if that is higher. Every article
+ * of the partition not passed on for the query scores at most that much, the same bound as the one of
+ * PartialTopKMapPartitions, and the caller ranks the query again without pruning when its final 10th article scores
+ * lower.
+ */
+public class PrunedDphMapPartitions implements MapPartitionsFunction<NewsArticleInfo, QueryRanking> {
+
+	private static final long serialVersionUID = -2946165406011468720L;
+
+	static final int REFRESH_INTERVAL = 64; // candidates added per query between two threshold updates
+	static final int MEMO_CAPACITY = 65536; // title pairs cached per partition
+
+	Broadcast<List<Query>> queryList; // List of Queries
+	Broadcast<QueryTermIndex> queryTermIndex; // term ids of each query and queries of each term id
+	Broadcast<ArticleTermFreqDict> corpusTermDict; // term frequency dictionary within the corpus
+	Broadcast<TermDictionary> termDictionary; // term ids of the query vocabulary
+	Broadcast<Map<String, double[]>> termScoreLines; // dominant score lines of each query term
+	long totalDocsInCorpus; // Number of documents in the corpus
+	long averageDocumentLengthInCorpus; // Average document length in the corpus
+	int k; // number of articles returned per query
+	PipelineMetrics metrics; // optional, counts the scored and pruned pairs
+
+	/**
+	 * @param queryList
+	 * @param queryTermIndex
+	 * @param corpusTermDict
+	 * @param termDictionary
+	 * @param termScoreLines
+	 * @param totalDocsInCorpus
+	 * @param averageDocumentLengthInCorpus
+	 * @param k
+	 * @param metrics
+	 */
+	public PrunedDphMapPartitions(Broadcast<List<Query>> queryList, Broadcast<QueryTermIndex> queryTermIndex,
+			Broadcast<ArticleTermFreqDict> corpusTermDict, Broadcast<TermDictionary> termDictionary,
+			Broadcast<Map<String, double[]>> termScoreLines, long totalDocsInCorpus,
+			long averageDocumentLengthInCorpus, int k, PipelineMetrics metrics) {
+		super();
+		this.queryList = queryList;
+		this.queryTermIndex = queryTermIndex;
+		this.corpusTermDict = corpusTermDict;
+		this.termDictionary = termDictionary;
+		this.termScoreLines = termScoreLines;
+		this.totalDocsInCorpus = totalDocsInCorpus;
+		this.averageDocumentLengthInCorpus = averageDocumentLengthInCorpus;
+		this.k = k;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Iterator<QueryRanking> call(Iterator<NewsArticleInfo> articles) throws Exception {
+		TermDictionary dictionary = termDictionary.getValue();
+		List<Query> queries = queryList.getValue();
+		int terms = dictionary.size();
+
+		QueryTermIndex index = queryTermIndex.getValue();
+
+		long[] corpusTermFrequencies = new long[terms];
+		for (int termId = 0; termId < terms; termId++)
+			corpusTermFrequencies[termId] = corpusTermDict.getValue().getTermFreqdict()
+					.getOrDefault(dictionary.getTerm(termId), (long) 0);
+		BatchDPHScorer scorer = new BatchDPHScorer(corpusTermFrequencies, averageDocumentLengthInCorpus,
+				totalDocsInCorpus);
+
+		// highest score of each term over the corpus
+		double[] termBounds = new double[terms];
+		for (int termId = 0; termId < terms; termId++)
+			termBounds[termId] = scorer.upperBound(termId, termScoreLines.getValue().get(dictionary.getTerm(termId)));
+
+		DiversifiedTopK.SimilarityMemo memo = new DiversifiedTopK.SimilarityMemo(MEMO_CAPACITY);
+		DiversifiedTopK[] candidates = new DiversifiedTopK[queries.size()];
+		double[] thresholds = new double[queries.size()];
+		double[] maxThresholds = new double[queries.size()];
+		for (int queryIndex = 0; queryIndex < thresholds.length; queryIndex++) {
+			thresholds[queryIndex] = Double.NEGATIVE_INFINITY;
+			maxThresholds[queryIndex] = Double.NEGATIVE_INFINITY;
+		}
+
+		// state of the current article, marked by its number to avoid clearing the arrays
+		int[] termArticle = new int[terms]; // article in which the term was found
+		int[] termNeeded = new int[terms]; // article for which the term has to be scored
+		double[] termDph = new double[terms];
+		int[] articleTermIds = new int[terms];
+		int[] articleTermFrequencies = new int[terms];
+		double[] articleTermDph = new double[terms];
+		int[] queryArticle = new int[queries.size()]; // article for which the query was matched
+		int[] scoredQueries = new int[queries.size()];
+		int article = 0;
+
+		long scoredPairs = 0, prunedPairs = 0, clamps = 0;
+		while (articles.hasNext()) {
+			NewsArticleInfo articleInfo = articles.next();
+			article++;
+
+			TermFrequencyMap termFrequencies = articleInfo.getTermFrequencies();
+			int[] keys = termFrequencies.getKeys();
+			int[] values = termFrequencies.getValues();
+			int articleTerms = 0;
+			for (int slot = 0; slot < keys.length; slot++) {
+				if (keys[slot] >= 0) {
+					termArticle[keys[slot]] = article;
+					articleTermIds[articleTerms] = keys[slot];
+					articleTermFrequencies[articleTerms] = values[slot];
+					articleTerms++;
+				}
+			}
+			if (articleTerms == 0)
+				continue;
+
+			// queries sharing a term with the article whose bound reaches their threshold,
+			// and the terms they need
+			int queriesToScore = 0;
+			for (int i = 0; i < articleTerms; i++) {
+				for (int queryIndex : index.getQueries(articleTermIds[i])) {
+					if (queryArticle[queryIndex] == article)
+						continue;
+					queryArticle[queryIndex] = article;
+
+					int[] termIds = index.getTermIds(queryIndex);
+					double bound = 0;
+					for (int termId : termIds) {
+						if (termId >= 0 && termArticle[termId] == article)
+							bound += termBounds[termId];
+					}
+					if (bound / termIds.length < thresholds[queryIndex]) {
+						prunedPairs++;
+						continue;
+					}
+					scoredQueries[queriesToScore++] = queryIndex;
+					for (int termId : termIds) {
+						if (termId >= 0)
+							termNeeded[termId] = article;
+					}
+				}
+			}
+			if (queriesToScore == 0)
+				continue;
+
+			// score the needed terms of the article in one batch
+			int neededTerms = 0;
+			for (int i = 0; i < articleTerms; i++) {
+				if (termNeeded[articleTermIds[i]] == article) {
+					articleTermIds[neededTerms] = articleTermIds[i];
+					articleTermFrequencies[neededTerms] = articleTermFrequencies[i];
+					neededTerms++;
+				}
+			}
+			int currentDocumentLength = (int) articleInfo.getLengthOfDocument();
+			scorer.score(articleTermIds, articleTermFrequencies, currentDocumentLength, articleTermDph, neededTerms);
+			for (int i = 0; i < neededTerms; i++) {
+				double dphValue = articleTermDph[i];
+				// If DPH score return is infinity, -infinity or other than numeric then set it as 0
+				if (Double.isNaN(dphValue) || Double.isInfinite(dphValue)) {
+					dphValue = 0.0;
+					clamps++;
+				}
+				termDph[articleTermIds[i]] = dphValue;
+			}
+
+			for (int i = 0; i < queriesToScore; i++) {
+				int queryIndex = scoredQueries[i];
+				int[] termIds = index.getTermIds(queryIndex);
+
+				// the same sum as ArtcleDphFlatMap, a query term that is not in the article scores 0
+				double queryArticleDph = 0;
+				for (int termId : termIds) {
+					if (termId >= 0 && termArticle[termId] == article)
+						queryArticleDph += termDph[termId];
+				}
+				double avgDphValue = queryArticleDph / termIds.length;
+				scoredPairs++;
+				if (avgDphValue < thresholds[queryIndex])
+					continue;
+
+				DiversifiedTopK queryCandidates = candidates[queryIndex];
+				if (queryCandidates == null) {
+					queryCandidates = new DiversifiedTopK(k, memo);
+					candidates[queryIndex] = queryCandidates;
+				}
+				queryCandidates.add(new RankedDocument(articleInfo.getId(), articleInfo.getTitle(), avgDphValue,
+						articleInfo.getClusterId()));
+
+				// drop the candidates that can no longer be selected and raise the threshold
+				if (queryCandidates.pending() >= REFRESH_INTERVAL) {
+					queryCandidates.compact();
+					thresholds[queryIndex] = queryCandidates.kthScore();
+					maxThresholds[queryIndex] = Math.max(maxThresholds[queryIndex], thresholds[queryIndex]);
+				}
+			}
+		}
+
+		List<QueryRanking> partialRankings = new ArrayList<QueryRanking>();
+		for (int queryIndex = 0; queryIndex < candidates.length; queryIndex++) {
+			if (candidates[queryIndex] == null)
+				continue;
+			QueryRanking ranking = new QueryRanking(queryIndex, candidates[queryIndex].prefix());
+			ranking.setThreshold(Math.max(maxThresholds[queryIndex], candidates[queryIndex].droppedScore()));
+			partialRankings.add(ranking);
+		}
+
+		if (metrics != null) {
+			metrics.addScoredPairs(scoredPairs);
+			metrics.addPrunedPairs(prunedPairs);
+			if (clamps > 0)
+				metrics.addDphClamps(clamps);
+			metrics.addTitleComparisons(memo.getComparisons());
+		}
+		return partialRankings.iterator();
+	}
+}
@@ -0,0 +1,50 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.Map;
+
+import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Row;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+
+/*
+ * MapFunction which converts an article row of a corpus snapshot (id, title, lengthOfDocument and the term frequencies 
+ * of every pre-processed term) into the compact NewsArticleInfo used for scoring, keeping the term ids of the query 
+ * vocabulary only. This is the same output ArticleInfoFlatMap gives for the raw Json article, without parsing or 
+ * tokenization.
+ */
+public class SnapshotArticleMap implements MapFunction<Row, NewsArticleInfo> {
+
+	private static final long serialVersionUID = -6027584093468107313L;
+
+	Broadcast<TermDictionary> termDictionary; // vocabulary of all queries
+
+	/**
+	 * @param termDictionary
+	 */
+	public SnapshotArticleMap(Broadcast<TermDictionary> termDictionary) {
+		super();
+		this.termDictionary = termDictionary;
+	}
+
+	@Override
+	public NewsArticleInfo call(Row value) throws Exception {
+		TermDictionary dictionary = termDictionary.getValue();
+		TermFrequencyMap termFrequencies = new TermFrequencyMap();
+
+		Map<String, Long> termDict = value.getJavaMap(value.fieldIndex("termDict"));
+		if (termDict != null) {
+			for (Map.Entry<String, Long> term : termDict.entrySet()) {
+				int termId = dictionary.getId(term.getKey());
+				if (termId != TermDictionary.UNKNOWN_TERM)
+					termFrequencies.add(termId, term.getValue().intValue());
+			}
+		}
+
+		return new NewsArticleInfo(value.getString(value.fieldIndex("id")), value.getString(value.fieldIndex("title")),
+				null, termFrequencies, value.getLong(value.fieldIndex("lengthOfDocument")));
+	}
+}
@@ -0,0 +1,43 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.spark.api.java.function.FlatMapFunction;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitleBand;
+import uk.ac.gla.dcs.bigdata.studentutilities.TitleMinHash;
+
+/*
+ * FlatMapFunction which computes the MinHash signature of the title of an article and returns one TitleBand per 
+ * band of the signature. Articles without any query term are never ranked, so their titles are not clustered, 
+ * and articles without an id could not be told apart in a cluster, so they are always compared while ranking.
+ */
+public class TitleBandFlatMap implements FlatMapFunction<NewsArticleInfo, TitleBand> {
+
+	private static final long serialVersionUID = -3016526339158226853L;
+
+	@Override
+	public Iterator<TitleBand> call(NewsArticleInfo article) throws Exception {
+		if (!clustered(article))
+			return Collections.emptyIterator();
+
+		long[] bandKeys = TitleMinHash.bandKeys(TitleMinHash.signature(article.getTitle()));
+		List<TitleBand> bands = new ArrayList<TitleBand>(bandKeys.length);
+		for (int band = 0; band < bandKeys.length; band++)
+			bands.add(new TitleBand(band, bandKeys[band], article.getId()));
+		return bands.iterator();
+	}
+
+	/**
+	 * @param article
+	 * @return whether the title of the article is clustered
+	 */
+	public static boolean clustered(NewsArticleInfo article) {
+		return article.getId() != null && article.getTermFrequencies() != null
+				&& article.getTermFrequencies().getSize() > 0;
+	}
+}
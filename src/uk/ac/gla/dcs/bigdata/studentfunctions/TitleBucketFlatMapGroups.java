@@ -0,0 +1,44 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.spark.api.java.function.FlatMapGroupsFunction;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.TitleBand;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitlePair;
+
+/*
+ * FlatMapGroupsFunction which returns the candidate near-duplicate pairs of one LSH bucket (the articles sharing a 
+ * band key), the smaller id first. The titles are not part of the bucket: a pair that shares several bands is 
+ * returned by each of their buckets, so the pairs are made distinct and verified once (see NearDuplicateTitleFilter). 
+ * Very large buckets, such as those of short and common titles, would give a quadratic number of pairs, so each 
+ * article is only paired with the first MAX_COMPARED articles of its bucket.
+ */
+public class TitleBucketFlatMapGroups implements FlatMapGroupsFunction<Long, TitleBand, TitlePair> {
+
+	private static final long serialVersionUID = 2458150918637226035L;
+
+	static final int MAX_COMPARED = 256; // articles of a bucket every other article is paired with
+
+	@Override
+	public Iterator<TitlePair> call(Long key, Iterator<TitleBand> bucket) throws Exception {
+		List<String> compared = new ArrayList<String>();
+		List<TitlePair> pairs = new ArrayList<TitlePair>();
+
+		while (bucket.hasNext()) {
+			String current = bucket.next().getDocid();
+			for (String previous : compared) {
+				int order = previous.compareTo(current);
+				if (order < 0)
+					pairs.add(new TitlePair(previous, current));
+				else if (order > 0)
+					pairs.add(new TitlePair(current, previous));
+			}
+			if (compared.size() < MAX_COMPARED)
+				compared.add(current);
+		}
+		return pairs.iterator();
+	}
+}
@@ -0,0 +1,33 @@
+package uk.ac.gla.dcs.bigdata.studentfunctions;
+
+import java.util.Map;
+
+import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+
+/*
+ * MapFunction which sets the near-duplicate title cluster of an article, -1 for the articles without any 
+ * near-duplicate found.
+ */
+public class TitleClusterMap implements MapFunction<NewsArticleInfo, NewsArticleInfo> {
+
+	private static final long serialVersionUID = -7645327519402367018L;
+
+	Broadcast<Map<String, Integer>> clusters; // cluster id of the articles with near-duplicates
+
+	/**
+	 * @param clusters
+	 */
+	public TitleClusterMap(Broadcast<Map<String, Integer>> clusters) {
+		super();
+		this.clusters = clusters;
+	}
+
+	@Override
+	public NewsArticleInfo call(NewsArticleInfo article) throws Exception {
+		article.setClusterId(clusters.getValue().getOrDefault(article.getId(), -1));
+		return article;
+	}
+}
@@ -1,9 +1,8 @@
 package uk.ac.gla.dcs.bigdata.studentstructures;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /*
  * Represents term (or word) frequency within the document corpus. This class will be used later for DPH calculation.
@@ -14,6 +13,9 @@ public class ArticleTermFreqDict implements Serializable {
 
 	Map<String, Long> termFreqdict; // term and its number of occurences within the corpus
 
+	public ArticleTermFreqDict() {
+	}
+
 	/**
 	 * @param termFreqdict
 	 */
@@ -29,9 +31,16 @@ public class ArticleTermFreqDict implements Serializable {
 	 *         corpus termFrequency
 	 */
 	public ArticleTermFreqDict mergeWith(ArticleTermFreqDict newDict) {
-		Map<String, Long> mergedDict = Stream
-				.concat(termFreqdict.entrySet().stream(), newDict.getTermFreqdict().entrySet().stream())
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (value1, value2) -> value1 + value2));
+		// copy the larger dictionary once and add the entries of the smaller one into it
+		Map<String, Long> larger = termFreqdict, smaller = newDict.getTermFreqdict();
+		if (smaller.size() > larger.size()) {
+			larger = newDict.getTermFreqdict();
+			smaller = termFreqdict;
+		}
+		Map<String, Long> mergedDict = new HashMap<String, Long>(larger);
+		for (Map.Entry<String, Long> entry : smaller.entrySet()) {
+			mergedDict.merge(entry.getKey(), entry.getValue(), Long::sum);
+		}
 		return new ArticleTermFreqDict(mergedDict);
 	}
 
@@ -0,0 +1,67 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * Holds the corpus level statistics needed for DPH calculation: the number of documents in the corpus and 
+ * the total length of all documents (in number of terms). These are stored next to the inverted index so that 
+ * queries can be scored without re-processing the corpus.
+ */
+public class CorpusStatistics implements Serializable {
+
+	private static final long serialVersionUID = -3390311275867421735L;
+
+	long totalDocsInCorpus; // Number of documents in the corpus
+	long totalDocumentLength; // Sum of the length of all documents in the corpus
+
+	public CorpusStatistics() {
+	}
+
+	/**
+	 * @param totalDocsInCorpus
+	 * @param totalDocumentLength
+	 */
+	public CorpusStatistics(long totalDocsInCorpus, long totalDocumentLength) {
+		super();
+		this.totalDocsInCorpus = totalDocsInCorpus;
+		this.totalDocumentLength = totalDocumentLength;
+	}
+
+	/**
+	 * @return average document length in the corpus (in terms), 0 for an empty corpus
+	 */
+	public long averageDocumentLengthInCorpus() {
+		if (totalDocsInCorpus == 0)
+			return 0;
+		return totalDocumentLength / totalDocsInCorpus;
+	}
+
+	/**
+	 * @return the totalDocsInCorpus
+	 */
+	public long getTotalDocsInCorpus() {
+		return totalDocsInCorpus;
+	}
+
+	/**
+	 * @param totalDocsInCorpus the totalDocsInCorpus to set
+	 */
+	public void setTotalDocsInCorpus(long totalDocsInCorpus) {
+		this.totalDocsInCorpus = totalDocsInCorpus;
+	}
+
+	/**
+	 * @return the totalDocumentLength
+	 */
+	public long getTotalDocumentLength() {
+		return totalDocumentLength;
+	}
+
+	/**
+	 * @param totalDocumentLength the totalDocumentLength to set
+	 */
+	public void setTotalDocumentLength(long totalDocumentLength) {
+		this.totalDocumentLength = totalDocumentLength;
+	}
+
+}
@@ -0,0 +1,155 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.gla.dcs.bigdata.studentutilities.BatchDPHScorer;
+
+/*
+ * Everything DPH needs to know about the corpus, gathered in a single pass over the articles: the number of 
+ * documents, the total length of all documents (in number of terms) and the frequency of the query terms 
+ * within the corpus. Partial statistics of each partition are merged together with mergeWith.
+ * For dynamic pruning, the dominant DPH score lines of each query term are gathered as well (see 
+ * BatchDPHScorer.line), from which the highest score of the term is known once the statistics are complete.
+ */
+public class CorpusTermStatistics implements Serializable {
+
+	private static final long serialVersionUID = 2873540761389470166L;
+
+	long totalDocsInCorpus; // Number of documents
+	long totalDocumentLength; // Sum of the length of all documents
+	Map<String, Long> termFreqdict; // query term and its number of occurences within the documents
+	Map<String, double[]> termScoreLines; // query term and the <slope, intercept> pairs of its dominant score lines
+
+	public CorpusTermStatistics() {
+	}
+
+	/**
+	 * @param totalDocsInCorpus
+	 * @param totalDocumentLength
+	 * @param termFreqdict
+	 */
+	public CorpusTermStatistics(long totalDocsInCorpus, long totalDocumentLength, Map<String, Long> termFreqdict) {
+		super();
+		this.totalDocsInCorpus = totalDocsInCorpus;
+		this.totalDocumentLength = totalDocumentLength;
+		this.termFreqdict = termFreqdict;
+	}
+
+	/**
+	 * @param totalDocsInCorpus
+	 * @param totalDocumentLength
+	 * @param termFreqdict
+	 * @param termScoreLines
+	 */
+	public CorpusTermStatistics(long totalDocsInCorpus, long totalDocumentLength, Map<String, Long> termFreqdict,
+			Map<String, double[]> termScoreLines) {
+		this(totalDocsInCorpus, totalDocumentLength, termFreqdict);
+		this.termScoreLines = termScoreLines;
+	}
+
+	/**
+	 * @param other
+	 * @return statistics of the documents of both
+	 */
+	public CorpusTermStatistics mergeWith(CorpusTermStatistics other) {
+		// copy the larger dictionary once and add the entries of the smaller one into it
+		Map<String, Long> larger = termFreqdict, smaller = other.getTermFreqdict();
+		if (smaller.size() > larger.size()) {
+			larger = other.getTermFreqdict();
+			smaller = termFreqdict;
+		}
+		Map<String, Long> mergedDict = new HashMap<String, Long>(larger);
+		for (Map.Entry<String, Long> entry : smaller.entrySet()) {
+			mergedDict.merge(entry.getKey(), entry.getValue(), Long::sum);
+		}
+
+		// the dominant lines of a term in both are among the dominant lines of each
+		Map<String, double[]> mergedLines = null;
+		if (termScoreLines != null && other.getTermScoreLines() != null) {
+			mergedLines = new HashMap<String, double[]>(termScoreLines);
+			for (Map.Entry<String, double[]> entry : other.getTermScoreLines().entrySet()) {
+				mergedLines.merge(entry.getKey(), entry.getValue(), (lines1, lines2) -> {
+					double[] lines = Arrays.copyOf(lines1, lines1.length + lines2.length);
+					System.arraycopy(lines2, 0, lines, lines1.length, lines2.length);
+					return BatchDPHScorer.dominantLines(lines, lines.length / 2);
+				});
+			}
+		}
+		return new CorpusTermStatistics(totalDocsInCorpus + other.getTotalDocsInCorpus(),
+				totalDocumentLength + other.getTotalDocumentLength(), mergedDict, mergedLines);
+	}
+
+	/**
+	 * @return the number of documents and their total length
+	 */
+	public CorpusStatistics toCorpusStatistics() {
+		return new CorpusStatistics(totalDocsInCorpus, totalDocumentLength);
+	}
+
+	/**
+	 * @return the query term frequencies
+	 */
+	public ArticleTermFreqDict toArticleTermFreqDict() {
+		return new ArticleTermFreqDict(termFreqdict);
+	}
+
+	/**
+	 * @return the totalDocsInCorpus
+	 */
+	public long getTotalDocsInCorpus() {
+		return totalDocsInCorpus;
+	}
+
+	/**
+	 * @param totalDocsInCorpus the totalDocsInCorpus to set
+	 */
+	public void setTotalDocsInCorpus(long totalDocsInCorpus) {
+		this.totalDocsInCorpus = totalDocsInCorpus;
+	}
+
+	/**
+	 * @return the totalDocumentLength
+	 */
+	public long getTotalDocumentLength() {
+		return totalDocumentLength;
+	}
+
+	/**
+	 * @param totalDocumentLength the totalDocumentLength to set
+	 */
+	public void setTotalDocumentLength(long totalDocumentLength) {
+		this.totalDocumentLength = totalDocumentLength;
+	}
+
+	/**
+	 * @return the termFreqdict
+	 */
+	public Map<String, Long> getTermFreqdict() {
+		return termFreqdict;
+	}
+
+	/**
+	 * @param termFreqdict the termFreqdict to set
+	 */
+	public void setTermFreqdict(Map<String, Long> termFreqdict) {
+		this.termFreqdict = termFreqdict;
+	}
+
+	/**
+	 * @return the dominant score lines of each query term, null if they were not gathered
+	 */
+	public Map<String, double[]> getTermScoreLines() {
+		return termScoreLines;
+	}
+
+	/**
+	 * @param termScoreLines the termScoreLines to set
+	 */
+	public void setTermScoreLines(Map<String, double[]> termScoreLines) {
+		this.termScoreLines = termScoreLines;
+	}
+
+}
@@ -0,0 +1,226 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import uk.ac.gla.dcs.bigdata.providedutilities.TextDistanceCalculator;
+
+/*
+ * Selects the top k articles of a query that are not near-duplicates of each other (title distance below 0.5 to 
+ * a higher scored selected article). Equivalent to sorting all candidates by DPH score (ties kept in insertion order) 
+ * and keeping each one that is dissimilar to all selected so far, but the candidates are only ordered as far as needed: 
+ * they are heapified and polled in score order, and polling stops as soon as k articles are selected. 
+ * Title comparisons go through a SimilarityMemo, which can be shared between instances, and are skipped for articles 
+ * whose titles were clustered into different near-duplicate clusters.
+ */
+public class DiversifiedTopK {
+
+	public static final double NEAR_DUPLICATE_DISTANCE = 0.5; // titles closer than this are near-duplicates
+
+	// highest score first, ties in insertion order
+	static final Comparator<Candidate> SCORE_ORDER = (c1, c2) -> {
+		int order = Double.compare(c2.document.getScore(), c1.document.getScore());
+		return order != 0 ? order : Long.compare(c1.sequence, c2.sequence);
+	};
+
+	int k; // number of articles to select
+	SimilarityMemo memo; // cached near-duplicate decisions
+	List<Candidate> candidates; // candidates in insertion order
+	long sequence; // insertion counter
+	int retained; // candidates kept by the last compact
+	double dropped = Double.NEGATIVE_INFINITY; // highest score of the candidates dropped by compact
+
+	List<RankedDocument> selected; // result of the last selection
+	List<RankedDocument> consumed; // candidates polled by the last selection, in score order
+	double remainder; // highest score of the candidates left after the last selection
+
+	/**
+	 * @param k
+	 * @param memo
+	 */
+	public DiversifiedTopK(int k, SimilarityMemo memo) {
+		super();
+		this.k = k;
+		this.memo = memo;
+		this.candidates = new ArrayList<Candidate>();
+	}
+
+	/**
+	 * @param document candidate article
+	 */
+	public void add(RankedDocument document) {
+		candidates.add(new Candidate(document, sequence++));
+		selected = null;
+	}
+
+	/**
+	 * @param documents candidate articles
+	 */
+	public void addAll(List<RankedDocument> documents) {
+		for (RankedDocument document : documents)
+			add(document);
+	}
+
+	/**
+	 * @return number of candidates held
+	 */
+	public int size() {
+		return candidates.size();
+	}
+
+	/**
+	 * @return number of candidates added since the last compact
+	 */
+	public int pending() {
+		return candidates.size() - retained;
+	}
+
+	/**
+	 * @return the top k articles which are not near-duplicates of each other, highest score first
+	 */
+	public List<RankedDocument> topK() {
+		select();
+		return selected;
+	}
+
+	/**
+	 * @return score of the k-th selected article, negative infinity while fewer than k articles are selected
+	 */
+	public double kthScore() {
+		select();
+		return selected.size() < k ? Double.NEGATIVE_INFINITY : selected.get(k - 1).getScore();
+	}
+
+	/**
+	 * @return the candidates, highest score first, up to and including the k-th selected article. This includes the
+	 *         near-duplicates skipped on the way, which may be needed again once more candidates are merged in. The
+	 *         candidates beyond the prefix may be needed as well: an article merged in later can be a near-duplicate
+	 *         of several selected ones and leave room for them, see droppedScore.
+	 */
+	public List<RankedDocument> prefix() {
+		select();
+		return consumed;
+	}
+
+	/**
+	 * @return the highest score of the candidates that are not in the prefix, including those dropped by compact,
+	 *         negative infinity if there are none. A selection over merged prefixes is the one of all candidates if
+	 *         its k-th article scores at least as high (equal scores may be ordered differently).
+	 */
+	public double droppedScore() {
+		select();
+		return Math.max(dropped, remainder);
+	}
+
+	/**
+	 * Drops every candidate that lies beyond the prefix, keeping track of the highest score dropped.
+	 */
+	public void compact() {
+		dropped = droppedScore();
+		List<RankedDocument> prefix = prefix();
+		candidates = new ArrayList<Candidate>(prefix.size());
+		sequence = 0;
+		for (RankedDocument document : prefix)
+			candidates.add(new Candidate(document, sequence++));
+		retained = candidates.size();
+	}
+
+	private void select() {
+		if (selected != null)
+			return;
+
+		// built from the whole list in one O(n) heapify, in the natural (score) order of the candidates
+		PriorityQueue<Candidate> heap = new PriorityQueue<Candidate>(candidates);
+
+		selected = new ArrayList<RankedDocument>(k);
+		consumed = new ArrayList<RankedDocument>(k);
+		while (!heap.isEmpty() && selected.size() < k) {
+			RankedDocument current = heap.poll().document;
+			consumed.add(current);
+
+			boolean nearDuplicate = false;
+			for (RankedDocument result : selected) {
+				if (!result.inDifferentCluster(current) && memo.nearDuplicates(result.getTitle(), current.getTitle())) {
+					nearDuplicate = true;
+					break;
+				}
+			}
+			if (!nearDuplicate)
+				selected.add(current);
+		}
+		remainder = heap.isEmpty() ? Double.NEGATIVE_INFINITY : heap.peek().document.getScore();
+	}
+
+	static class Candidate implements Comparable<Candidate> {
+		RankedDocument document;
+		long sequence;
+
+		Candidate(RankedDocument document, long sequence) {
+			this.document = document;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return SCORE_ORDER.compare(this, other);
+		}
+	}
+
+	/**
+	 * Size bounded (least recently used) cache of near-duplicate decisions between two titles.
+	 */
+	public static class SimilarityMemo extends LinkedHashMap<String, Boolean> {
+
+		private static final long serialVersionUID = -6177452736767624161L;
+
+		int capacity; // maximum number of cached title pairs
+		long comparisons; // distance calculations, i.e. cache misses
+
+		/**
+		 * @param capacity
+		 */
+		public SimilarityMemo(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/**
+		 * @param title1
+		 * @param title2
+		 * @return true if the distance between the titles is below NEAR_DUPLICATE_DISTANCE
+		 */
+		public boolean nearDuplicates(String title1, String title2) {
+			if (title1 != null && title1.equals(title2))
+				return true;
+
+			// the distance is symmetric, so order the pair to share the cache entry
+			String key1 = title1 == null ? "\u0000" : title1;
+			String key2 = title2 == null ? "\u0000" : title2;
+			String key = key1.compareTo(key2) <= 0 ? key1 + '\u0001' + key2 : key2 + '\u0001' + key1;
+
+			Boolean nearDuplicates = get(key);
+			if (nearDuplicates == null) {
+				nearDuplicates = TextDistanceCalculator.isSimilarityBelow(title1, title2, NEAR_DUPLICATE_DISTANCE);
+				comparisons++;
+				put(key, nearDuplicates);
+			}
+			return nearDuplicates;
+		}
+
+		/**
+		 * @return number of title distances calculated so far
+		 */
+		public long getComparisons() {
+			return comparisons;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * A range of consecutive documents of a binary corpus (see BinaryCorpus), read by one task.
+ */
+public class DocumentRange implements Serializable {
+
+	private static final long serialVersionUID = -6348201395017652244L;
+
+	int first; // number of the first document
+	int end; // number of the document after the last one
+
+	public DocumentRange() {
+	}
+
+	/**
+	 * @param first
+	 * @param end
+	 */
+	public DocumentRange(int first, int end) {
+		super();
+		this.first = first;
+		this.end = end;
+	}
+
+	/**
+	 * @return the first
+	 */
+	public int getFirst() {
+		return first;
+	}
+
+	/**
+	 * @param first the first to set
+	 */
+	public void setFirst(int first) {
+		this.first = first;
+	}
+
+	/**
+	 * @return the end
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @param end the end to set
+	 */
+	public void setEnd(int end) {
+		this.end = end;
+	}
+
+}
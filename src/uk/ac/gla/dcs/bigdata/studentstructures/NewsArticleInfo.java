@@ -8,7 +8,8 @@ import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
 /*
  * This class is created from base class NewsArticle.  Class represents a single article from Washington Post contains essential information needed to 
  * achieve the task mainly id, title, and content fields of a document. In addition to this, class hold variables to store length of the document 
- * and term (or word) frequency within the document.
+ * and term (or word) frequency within the document. Term frequencies are held either as a term dictionary or, when the
+ * article was processed against a TermDictionary, as compact term id frequencies.
  */
 
 public class NewsArticleInfo implements Serializable {
@@ -19,7 +20,12 @@ public class NewsArticleInfo implements Serializable {
 	String title; // article title
 	NewsArticle article; // Article
 	Map<String, Long> termDict; // term frequency occurrences
+	TermFrequencyMap termFrequencies; // term id frequency occurrences, compact alternative to termDict
 	long lengthOfDocument; // length of article in number of terms
+	int clusterId; // near-duplicate title cluster, see RankedDocument
+
+	public NewsArticleInfo() {
+	}
 
 	// paramterised constructor
 	public NewsArticleInfo(String id, String title, NewsArticle article, Map<String, Long> termDict,
@@ -32,6 +38,17 @@ public class NewsArticleInfo implements Serializable {
 		this.lengthOfDocument = lengthOfDocument;
 	}
 
+	// paramterised constructor for articles holding term ids of a TermDictionary
+	public NewsArticleInfo(String id, String title, NewsArticle article, TermFrequencyMap termFrequencies,
+			long lengthOfDocument) {
+		super();
+		this.id = id;
+		this.title = title;
+		this.article = article;
+		this.termFrequencies = termFrequencies;
+		this.lengthOfDocument = lengthOfDocument;
+	}
+
 	/**
 	 * @return the id
 	 */
@@ -88,6 +105,20 @@ public class NewsArticleInfo implements Serializable {
 		this.termDict = termDict;
 	}
 
+	/**
+	 * @return the termFrequencies
+	 */
+	public TermFrequencyMap getTermFrequencies() {
+		return termFrequencies;
+	}
+
+	/**
+	 * @param termFrequencies the termFrequencies to set
+	 */
+	public void setTermFrequencies(TermFrequencyMap termFrequencies) {
+		this.termFrequencies = termFrequencies;
+	}
+
 	/**
 	 * @return the lengthOfDocument
 	 */
@@ -102,4 +133,18 @@ public class NewsArticleInfo implements Serializable {
 		this.lengthOfDocument = lengthOfDocument;
 	}
 
+	/**
+	 * @return the clusterId
+	 */
+	public int getClusterId() {
+		return clusterId;
+	}
+
+	/**
+	 * @param clusterId the clusterId to set
+	 */
+	public void setClusterId(int clusterId) {
+		this.clusterId = clusterId;
+	}
+
 }
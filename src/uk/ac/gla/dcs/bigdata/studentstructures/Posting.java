@@ -0,0 +1,92 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * Represents a single entry of the inverted index, ie. the occurrence of one term within one article. 
+ * Along with the term frequency, the posting carries the length of the article so that a DPH score can be 
+ * calculated from the postings of the query terms alone, without going back to the article itself.
+ */
+public class Posting implements Serializable {
+
+	private static final long serialVersionUID = 4511960433581635710L;
+
+	String term; // pre-processed term
+	String docid; // unique article identifier
+	int termFrequency; // number of times the term appears in the article
+	long lengthOfDocument; // length of article in number of terms
+
+	public Posting() {
+	}
+
+	/**
+	 * @param term
+	 * @param docid
+	 * @param termFrequency
+	 * @param lengthOfDocument
+	 */
+	public Posting(String term, String docid, int termFrequency, long lengthOfDocument) {
+		super();
+		this.term = term;
+		this.docid = docid;
+		this.termFrequency = termFrequency;
+		this.lengthOfDocument = lengthOfDocument;
+	}
+
+	/**
+	 * @return the term
+	 */
+	public String getTerm() {
+		return term;
+	}
+
+	/**
+	 * @param term the term to set
+	 */
+	public void setTerm(String term) {
+		this.term = term;
+	}
+
+	/**
+	 * @return the docid
+	 */
+	public String getDocid() {
+		return docid;
+	}
+
+	/**
+	 * @param docid the docid to set
+	 */
+	public void setDocid(String docid) {
+		this.docid = docid;
+	}
+
+	/**
+	 * @return the termFrequency
+	 */
+	public int getTermFrequency() {
+		return termFrequency;
+	}
+
+	/**
+	 * @param termFrequency the termFrequency to set
+	 */
+	public void setTermFrequency(int termFrequency) {
+		this.termFrequency = termFrequency;
+	}
+
+	/**
+	 * @return the lengthOfDocument
+	 */
+	public long getLengthOfDocument() {
+		return lengthOfDocument;
+	}
+
+	/**
+	 * @param lengthOfDocument the lengthOfDocument to set
+	 */
+	public void setLengthOfDocument(long lengthOfDocument) {
+		this.lengthOfDocument = lengthOfDocument;
+	}
+
+}
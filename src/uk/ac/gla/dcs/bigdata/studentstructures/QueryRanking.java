@@ -0,0 +1,75 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+import java.util.List;
+
+/*
+ * Lightweight counterpart of DocumentRanking used while ranking: the query is identified by its position in the 
+ * list of queries being ranked, a dense int id used as the shuffle key, and the results are RankedDocuments, so no 
+ * Query or NewsArticle objects (nor the query text) go through the shuffle.
+ * When articles were pruned while ranking, threshold is the highest score below which they were skipped.
+ */
+public class QueryRanking implements Serializable {
+
+	private static final long serialVersionUID = -4316652957043560071L;
+
+	int queryId; // position of the query in the ranked query list
+	List<RankedDocument> results; // ranked articles for the query
+	double threshold = Double.NEGATIVE_INFINITY; // articles scoring below it may have been pruned
+
+	public QueryRanking() {
+	}
+
+	/**
+	 * @param queryId
+	 * @param results
+	 */
+	public QueryRanking(int queryId, List<RankedDocument> results) {
+		super();
+		this.queryId = queryId;
+		this.results = results;
+	}
+
+	/**
+	 * @return the queryId
+	 */
+	public int getQueryId() {
+		return queryId;
+	}
+
+	/**
+	 * @param queryId the queryId to set
+	 */
+	public void setQueryId(int queryId) {
+		this.queryId = queryId;
+	}
+
+	/**
+	 * @return the results
+	 */
+	public List<RankedDocument> getResults() {
+		return results;
+	}
+
+	/**
+	 * @param results the results to set
+	 */
+	public void setResults(List<RankedDocument> results) {
+		this.results = results;
+	}
+
+	/**
+	 * @return the threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @param threshold the threshold to set
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+}
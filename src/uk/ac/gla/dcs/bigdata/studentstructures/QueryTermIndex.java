@@ -0,0 +1,122 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+
+/*
+ * Inverted lookup from the term ids of a TermDictionary to the queries containing them. Built on the driver for a
+ * list of queries and broadcast, so that an article only visits the queries sharing one of its terms instead of
+ * testing every query of the batch. The query indexes are positions in the query list the index was built for.
+ */
+public class QueryTermIndex implements Serializable {
+
+	private static final long serialVersionUID = 8016419427935263178L;
+
+	int[][] queryTermIds; // term ids of each query, in query term order
+	int[][] termQueries; // indexes of the queries containing each term id, ascending and without repeats
+
+	public QueryTermIndex() {
+	}
+
+	/**
+	 * @param queryTermIds
+	 * @param termQueries
+	 */
+	public QueryTermIndex(int[][] queryTermIds, int[][] termQueries) {
+		super();
+		this.queryTermIds = queryTermIds;
+		this.termQueries = termQueries;
+	}
+
+	/**
+	 * @param queries
+	 * @param dictionary - dictionary holding the terms of the queries
+	 * @return the index of the given queries
+	 */
+	public static QueryTermIndex build(List<Query> queries, TermDictionary dictionary) {
+		int[][] queryTermIds = new int[queries.size()][];
+		int[] counts = new int[dictionary.size()];
+		int[] lastQuery = new int[dictionary.size()];
+		Arrays.fill(lastQuery, -1);
+		for (int queryIndex = 0; queryIndex < queryTermIds.length; queryIndex++) {
+			queryTermIds[queryIndex] = dictionary.getIds(queries.get(queryIndex).getQueryTerms());
+			for (int termId : queryTermIds[queryIndex]) {
+				// a term repeated within a query is listed once
+				if (termId >= 0 && lastQuery[termId] != queryIndex) {
+					lastQuery[termId] = queryIndex;
+					counts[termId]++;
+				}
+			}
+		}
+
+		int[][] termQueries = new int[dictionary.size()][];
+		for (int termId = 0; termId < termQueries.length; termId++)
+			termQueries[termId] = new int[counts[termId]];
+		Arrays.fill(counts, 0);
+		Arrays.fill(lastQuery, -1);
+		for (int queryIndex = 0; queryIndex < queryTermIds.length; queryIndex++) {
+			for (int termId : queryTermIds[queryIndex]) {
+				if (termId >= 0 && lastQuery[termId] != queryIndex) {
+					lastQuery[termId] = queryIndex;
+					termQueries[termId][counts[termId]++] = queryIndex;
+				}
+			}
+		}
+		return new QueryTermIndex(queryTermIds, termQueries);
+	}
+
+	/**
+	 * @return number of queries
+	 */
+	public int size() {
+		return queryTermIds.length;
+	}
+
+	/**
+	 * @param queryIndex
+	 * @return term ids of the query
+	 */
+	public int[] getTermIds(int queryIndex) {
+		return queryTermIds[queryIndex];
+	}
+
+	/**
+	 * @param termId
+	 * @return indexes of the queries containing the term
+	 */
+	public int[] getQueries(int termId) {
+		return termQueries[termId];
+	}
+
+	/**
+	 * @return the queryTermIds
+	 */
+	public int[][] getQueryTermIds() {
+		return queryTermIds;
+	}
+
+	/**
+	 * @param queryTermIds the queryTermIds to set
+	 */
+	public void setQueryTermIds(int[][] queryTermIds) {
+		this.queryTermIds = queryTermIds;
+	}
+
+	/**
+	 * @return the termQueries
+	 */
+	public int[][] getTermQueries() {
+		return termQueries;
+	}
+
+	/**
+	 * @param termQueries the termQueries to set
+	 */
+	public void setTermQueries(int[][] termQueries) {
+		this.termQueries = termQueries;
+	}
+
+}
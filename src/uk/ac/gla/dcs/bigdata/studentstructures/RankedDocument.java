@@ -0,0 +1,114 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * Lightweight counterpart of RankedResult used while ranking. Only the article id, the title (needed for near-duplicate 
+ * filtering) and the DPH score are carried through the shuffle; the full NewsArticle is attached to the final top 10 only.
+ * When the titles of the corpus were clustered (see TitleMinHash), the cluster id lets two articles of different 
+ * clusters be told apart without comparing their titles: 0 means the titles were not clustered, -1 that no 
+ * near-duplicate of the title was found, any other value is shared by the articles of one cluster.
+ */
+public class RankedDocument implements Serializable {
+
+	private static final long serialVersionUID = 3650190869542209419L;
+
+	String docid; // unique article identifier
+	String title; // article title
+	double score; // DPH score of the article for the query
+	int clusterId; // near-duplicate title cluster, 0 if not clustered
+
+	public RankedDocument() {
+	}
+
+	/**
+	 * @param docid
+	 * @param title
+	 * @param score
+	 */
+	public RankedDocument(String docid, String title, double score) {
+		super();
+		this.docid = docid;
+		this.title = title;
+		this.score = score;
+	}
+
+	/**
+	 * @param docid
+	 * @param title
+	 * @param score
+	 * @param clusterId
+	 */
+	public RankedDocument(String docid, String title, double score, int clusterId) {
+		this(docid, title, score);
+		this.clusterId = clusterId;
+	}
+
+	/**
+	 * @param other
+	 * @return true if the titles were clustered and the articles are in different clusters, so their titles are
+	 *         not near-duplicates
+	 */
+	public boolean inDifferentCluster(RankedDocument other) {
+		if (clusterId == 0 || other.clusterId == 0)
+			return false;
+		return clusterId == -1 || clusterId != other.clusterId;
+	}
+
+	/**
+	 * @return the docid
+	 */
+	public String getDocid() {
+		return docid;
+	}
+
+	/**
+	 * @param docid the docid to set
+	 */
+	public void setDocid(String docid) {
+		this.docid = docid;
+	}
+
+	/**
+	 * @return the title
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * @param title the title to set
+	 */
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	/**
+	 * @return the score
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * @param score the score to set
+	 */
+	public void setScore(double score) {
+		this.score = score;
+	}
+
+	/**
+	 * @return the clusterId
+	 */
+	public int getClusterId() {
+		return clusterId;
+	}
+
+	/**
+	 * @param clusterId the clusterId to set
+	 */
+	public void setClusterId(int clusterId) {
+		this.clusterId = clusterId;
+	}
+
+}
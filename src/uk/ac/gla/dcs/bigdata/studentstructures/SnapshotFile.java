@@ -0,0 +1,73 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * An input file ingested into a corpus snapshot: its path, a fingerprint of its content (the file system checksum, 
+ * or length and modification time where the file system has none) and the snapshot version it was added in.
+ */
+public class SnapshotFile implements Serializable {
+
+	private static final long serialVersionUID = 2645093316412371930L;
+
+	String path; // fully qualified path of the file
+	String fingerprint; // checksum of the file content
+	long version; // snapshot version that added the file
+
+	public SnapshotFile() {
+	}
+
+	/**
+	 * @param path
+	 * @param fingerprint
+	 * @param version
+	 */
+	public SnapshotFile(String path, String fingerprint, long version) {
+		super();
+		this.path = path;
+		this.fingerprint = fingerprint;
+		this.version = version;
+	}
+
+	/**
+	 * @return the path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @param path the path to set
+	 */
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @return the fingerprint
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @param fingerprint the fingerprint to set
+	 */
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param version the version to set
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+}
@@ -0,0 +1,94 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+
+/*
+ * Assigns dense int ids (0, 1, 2 ...) to terms. Built on the driver from the vocabulary of the queries and broadcast, 
+ * so that article term frequencies can be held as primitive <term id, frequency> pairs (TermFrequencyMap) 
+ * instead of Map<String, Long>.
+ */
+public class TermDictionary implements Serializable {
+
+	private static final long serialVersionUID = -2418862536104914655L;
+
+	public static final int UNKNOWN_TERM = -1; // id returned for terms outside the dictionary
+
+	Map<String, Integer> termIds; // term to term id
+	List<String> terms; // term id to term
+
+	public TermDictionary() {
+		termIds = new HashMap<String, Integer>();
+		terms = new ArrayList<String>();
+	}
+
+	/**
+	 * @param queries
+	 * @return dictionary of all terms of the given queries
+	 */
+	public static TermDictionary fromQueries(List<Query> queries) {
+		TermDictionary dictionary = new TermDictionary();
+		for (Query query : queries) {
+			for (String term : query.getQueryTerms())
+				dictionary.addTerm(term);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Adds a term to the dictionary if it is not part of it yet
+	 * 
+	 * @param term
+	 * @return the id of the term
+	 */
+	public int addTerm(String term) {
+		Integer id = termIds.get(term);
+		if (id == null) {
+			id = terms.size();
+			termIds.put(term, id);
+			terms.add(term);
+		}
+		return id;
+	}
+
+	/**
+	 * @param term
+	 * @return the id of the term or UNKNOWN_TERM if the term is not in the dictionary
+	 */
+	public int getId(String term) {
+		Integer id = termIds.get(term);
+		return id == null ? UNKNOWN_TERM : id;
+	}
+
+	/**
+	 * @param terms
+	 * @return the ids of the given terms, UNKNOWN_TERM for terms outside the dictionary
+	 */
+	public int[] getIds(List<String> terms) {
+		int[] ids = new int[terms.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = getId(terms.get(i));
+		return ids;
+	}
+
+	/**
+	 * @param id
+	 * @return the term with the given id
+	 */
+	public String getTerm(int id) {
+		return terms.get(id);
+	}
+
+	/**
+	 * @return number of terms in the dictionary
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+}
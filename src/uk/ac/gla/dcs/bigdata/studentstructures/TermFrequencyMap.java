@@ -0,0 +1,145 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+ * Compact <term id, frequency> map for a single article. Open addressing with linear probing over two parallel 
+ * int arrays, so there is no boxing and no entry object per term. Keys are term ids from a TermDictionary, 
+ * empty slots hold EMPTY. The arrays are exposed as bean properties so the map encodes as two primitive 
+ * arrays in a Dataset.
+ */
+public class TermFrequencyMap implements Serializable {
+
+	private static final long serialVersionUID = 1407350712418232417L;
+
+	static final int EMPTY = -1; // marks a free slot, term ids are never negative
+
+	int[] keys; // term ids, capacity is always a power of 2
+	int[] values; // frequency of the term id in the same slot
+	int size; // number of term ids in the map
+
+	public TermFrequencyMap() {
+		this(4);
+	}
+
+	/**
+	 * @param expectedSize
+	 */
+	public TermFrequencyMap(int expectedSize) {
+		int capacity = 4;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Adds the given count to the frequency of a term
+	 * 
+	 * @param termId
+	 * @param count
+	 */
+	public void add(int termId, int count) {
+		int slot = slot(termId);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = termId;
+			size++;
+			values[slot] = count;
+			// keep the load factor at or below 0.5
+			if (size * 2 > keys.length)
+				resize();
+		} else {
+			values[slot] += count;
+		}
+	}
+
+	/**
+	 * @param termId
+	 * @return frequency of the term, 0 if the term is not in the map
+	 */
+	public int get(int termId) {
+		if (termId < 0)
+			return 0;
+		int slot = slot(termId);
+		return keys[slot] == EMPTY ? 0 : values[slot];
+	}
+
+	/**
+	 * @param termId
+	 * @return true if the term is in the map
+	 */
+	public boolean contains(int termId) {
+		return termId >= 0 && keys[slot(termId)] != EMPTY;
+	}
+
+	// slot holding the term id, or the free slot where it would be inserted: Fibonacci
+	// hashing, the top log2(capacity) bits of the product are the home slot
+	private int slot(int termId) {
+		int mask = keys.length - 1;
+		int slot = (termId * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(keys.length));
+		while (keys[slot] != EMPTY && keys[slot] != termId)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void resize() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		values = new int[keys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the keys
+	 */
+	public int[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @param keys the keys to set
+	 */
+	public void setKeys(int[] keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * @return the values
+	 */
+	public int[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @param values the values to set
+	 */
+	public void setValues(int[] values) {
+		this.values = values;
+	}
+
+	/**
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param size the size to set
+	 */
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+}
@@ -0,0 +1,75 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * One band of the MinHash signature of an article title (see TitleMinHash). Articles are grouped by band key,
+ * and the articles of a group are the candidate near-duplicates of each other. Only the article id is shuffled
+ * with the key, the titles of the candidate pairs are joined back once the pairs are known.
+ */
+public class TitleBand implements Serializable {
+
+	private static final long serialVersionUID = -5183203452794426118L;
+
+	int band; // position of the band in the signature
+	long key; // band key, distinct between bands
+	String docid; // unique article identifier
+
+	public TitleBand() {
+	}
+
+	/**
+	 * @param band
+	 * @param key
+	 * @param docid
+	 */
+	public TitleBand(int band, long key, String docid) {
+		super();
+		this.band = band;
+		this.key = key;
+		this.docid = docid;
+	}
+
+	/**
+	 * @return the band
+	 */
+	public int getBand() {
+		return band;
+	}
+
+	/**
+	 * @param band the band to set
+	 */
+	public void setBand(int band) {
+		this.band = band;
+	}
+
+	/**
+	 * @return the key
+	 */
+	public long getKey() {
+		return key;
+	}
+
+	/**
+	 * @param key the key to set
+	 */
+	public void setKey(long key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return the docid
+	 */
+	public String getDocid() {
+		return docid;
+	}
+
+	/**
+	 * @param docid the docid to set
+	 */
+	public void setDocid(String docid) {
+		this.docid = docid;
+	}
+
+}
@@ -0,0 +1,58 @@
+package uk.ac.gla.dcs.bigdata.studentstructures;
+
+import java.io.Serializable;
+
+/*
+ * Two articles whose titles may be near-duplicates: a candidate pair of articles sharing an LSH band (see 
+ * TitleBucketFlatMapGroups), or once verified with TextDistanceCalculator, a pair whose title distance is below 0.5. 
+ * Candidate pairs hold the smaller id first, so that a pair found in several bands is the same TitlePair.
+ */
+public class TitlePair implements Serializable {
+
+	private static final long serialVersionUID = 7320964416012753491L;
+
+	String docid1; // unique identifier of the first article
+	String docid2; // unique identifier of the second article
+
+	public TitlePair() {
+	}
+
+	/**
+	 * @param docid1
+	 * @param docid2
+	 */
+	public TitlePair(String docid1, String docid2) {
+		super();
+		this.docid1 = docid1;
+		this.docid2 = docid2;
+	}
+
+	/**
+	 * @return the docid1
+	 */
+	public String getDocid1() {
+		return docid1;
+	}
+
+	/**
+	 * @param docid1 the docid1 to set
+	 */
+	public void setDocid1(String docid1) {
+		this.docid1 = docid1;
+	}
+
+	/**
+	 * @return the docid2
+	 */
+	public String getDocid2() {
+		return docid2;
+	}
+
+	/**
+	 * @param docid2 the docid2 to set
+	 */
+	public void setDocid2(String docid2) {
+		this.docid2 = docid2;
+	}
+
+}
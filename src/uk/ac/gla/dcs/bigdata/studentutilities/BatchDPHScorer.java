@@ -0,0 +1,210 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.terrier.matching.models.WeightingModelLibrary;
+
+/**
+ * DPH scoring of many <term, document> pairs with the corpus statistics fixed.
+ * Computes the same function as DPHScorer.getDPHScore, but the part that only
+ * depends on the term and the corpus, the integer division totalDocs / ctf, is
+ * calculated once per term when the scorer is created. Pairs are scored in
+ * batches over primitive arrays.
+ *
+ * The remaining arithmetic is evaluated in the same order as in DPHScorer, and
+ * through the same WeightingModelLibrary functions, so the scores are equal to
+ * those of DPHScorer bit for bit.
+ *
+ * A term that does not occur in the corpus (ctf of 0) has a NaN constant, so
+ * its score is NaN where DPHScorer would throw an ArithmeticException. A term
+ * frequency of 0 also scores NaN, like DPHScorer. Callers set NaN and infinite
+ * scores to 0.
+ *
+ * For dynamic pruning, the DPH score of a <term, document> pair is also a line
+ * in K = log2(avgLength * (totalDocs / ctf)): score = slope * K + intercept,
+ * where slope and intercept only depend on the term frequency and the document
+ * length. The lines of all documents containing a term can be gathered before
+ * the corpus statistics are known, and reduced to those that are not dominated
+ * by another line for K >= 0. upperBound then gives the highest score of the
+ * term over those documents.
+ */
+public class BatchDPHScorer implements Serializable {
+
+	private static final long serialVersionUID = 6514418823096471085L;
+
+	private static final double BOUND_MARGIN = 1e-9; // covers the rounding of the line form against DPHScorer
+
+	private final double averageDocumentLengthInCorpus;
+	private final double[] termConstants; // totalDocs / ctf, indexed by term id
+
+	/**
+	 * @param corpusTermFrequencies         - frequency of each term id in the
+	 *                                      corpus
+	 * @param averageDocumentLengthInCorpus - the average length across all
+	 *                                      documents
+	 * @param totalDocsInCorpus             - the number of documents in the
+	 *                                      corpus
+	 */
+	public BatchDPHScorer(long[] corpusTermFrequencies, double averageDocumentLengthInCorpus,
+			long totalDocsInCorpus) {
+		this.averageDocumentLengthInCorpus = averageDocumentLengthInCorpus;
+		termConstants = new double[corpusTermFrequencies.length];
+		for (int termId = 0; termId < termConstants.length; termId++) {
+			// same cast and integer division as DPHScorer
+			int totalTermFrequencyInCorpus = (int) corpusTermFrequencies[termId];
+			if (totalTermFrequencyInCorpus == 0)
+				termConstants[termId] = Double.NaN;
+			else
+				termConstants[termId] = totalDocsInCorpus / totalTermFrequencyInCorpus;
+		}
+	}
+
+	/**
+	 * @return number of term ids the scorer has constants for
+	 */
+	public int size() {
+		return termConstants.length;
+	}
+
+	/**
+	 * Calculates the DPH score of a single pair
+	 *
+	 * @param termId
+	 * @param termFrequencyInCurrentDocument
+	 * @param currentDocumentLength
+	 * @return
+	 */
+	public double score(int termId, int termFrequencyInCurrentDocument, int currentDocumentLength) {
+		return score(termConstants[termId], averageDocumentLengthInCorpus, termFrequencyInCurrentDocument,
+				currentDocumentLength);
+	}
+
+	/**
+	 * Calculates the DPH scores of the first length pairs of the arrays, pair i
+	 * being (termIds[i], termFrequencies[i], documentLengths[i])
+	 *
+	 * @param termIds
+	 * @param termFrequencies
+	 * @param documentLengths
+	 * @param scores          - receives the scores
+	 * @param length          - number of pairs
+	 */
+	public void score(int[] termIds, int[] termFrequencies, int[] documentLengths, double[] scores, int length) {
+		double[] constants = termConstants;
+		double averageLength = averageDocumentLengthInCorpus;
+		for (int i = 0; i < length; i++)
+			scores[i] = score(constants[termIds[i]], averageLength, termFrequencies[i], documentLengths[i]);
+	}
+
+	/**
+	 * Calculates the DPH scores of the first length terms of a single document
+	 *
+	 * @param termIds
+	 * @param termFrequencies
+	 * @param currentDocumentLength
+	 * @param scores                - receives the scores
+	 * @param length                - number of terms
+	 */
+	public void score(int[] termIds, int[] termFrequencies, int currentDocumentLength, double[] scores,
+			int length) {
+		double[] constants = termConstants;
+		double averageLength = averageDocumentLengthInCorpus;
+		for (int i = 0; i < length; i++)
+			scores[i] = score(constants[termIds[i]], averageLength, termFrequencies[i], currentDocumentLength);
+	}
+
+	/**
+	 * Upper bound of the (NaN and infinity clamped) DPH score of a term over the
+	 * documents whose lines are given
+	 *
+	 * @param termId
+	 * @param lines  - <slope, intercept> pairs of the documents, see line
+	 * @return
+	 */
+	public double upperBound(int termId, double[] lines) {
+		// scores are at least 0 once clamped
+		double bound = 0d;
+		if (lines != null) {
+			// score = slope * K + intercept with slope >= 0, so for K <= 0 (and NaN K, whose
+			// scores are clamped to 0) the intercept alone is a bound
+			double k = WeightingModelLibrary.log(averageDocumentLengthInCorpus * termConstants[termId]);
+			if (!(k > 0))
+				k = 0;
+			for (int i = 0; i < lines.length; i += 2)
+				bound = Math.max(bound, lines[i] * k + lines[i + 1]);
+		}
+		return bound + BOUND_MARGIN * (1d + bound);
+	}
+
+	/**
+	 * Writes the <slope, intercept> line of a document with the given term
+	 * frequency and length. Pairs whose score is always NaN or infinite are
+	 * written as NaN, their clamped score is 0.
+	 *
+	 * @param termFrequency
+	 * @param documentLength
+	 * @param lines          - receives the slope and the intercept
+	 * @param offset         - position of the slope in lines
+	 */
+	public static void line(int termFrequency, int documentLength, double[] lines, int offset) {
+		double tf = termFrequency;
+		double f = WeightingModelLibrary.relativeFrequency(tf, documentLength);
+		double norm = (1d - f) * (1d - f) / (tf + 1d);
+		double slope = norm * tf;
+		double intercept = norm * (tf * WeightingModelLibrary.log(f) + 0.5d * WeightingModelLibrary.log(2d * Math.PI * tf * (1d - f)));
+		if (Double.isNaN(intercept) || Double.isInfinite(intercept) || Double.isNaN(slope)) {
+			slope = Double.NaN;
+			intercept = Double.NaN;
+		}
+		lines[offset] = slope;
+		lines[offset + 1] = intercept;
+	}
+
+	/**
+	 * Keeps the lines that are not dominated for K >= 0, i.e. those for which no
+	 * other line has both a larger or equal slope and a larger or equal intercept.
+	 * NaN lines are dropped.
+	 *
+	 * @param lines - <slope, intercept> pairs
+	 * @param count - number of pairs in lines
+	 * @return the remaining pairs, by decreasing slope
+	 */
+	public static double[] dominantLines(double[] lines, int count) {
+		Integer[] order = new Integer[count];
+		int valid = 0;
+		for (int i = 0; i < count; i++) {
+			if (!Double.isNaN(lines[2 * i]))
+				order[valid++] = i;
+		}
+		// decreasing slope, then decreasing intercept
+		Arrays.sort(order, 0, valid, (i1, i2) -> {
+			int byslope = Double.compare(lines[2 * i2], lines[2 * i1]);
+			return byslope != 0 ? byslope : Double.compare(lines[2 * i2 + 1], lines[2 * i1 + 1]);
+		});
+
+		double[] dominant = new double[2 * valid];
+		int kept = 0;
+		double bestIntercept = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < valid; j++) {
+			int i = order[j];
+			// a smaller slope only matters with a larger intercept
+			if (lines[2 * i + 1] > bestIntercept) {
+				bestIntercept = lines[2 * i + 1];
+				dominant[2 * kept] = lines[2 * i];
+				dominant[2 * kept + 1] = lines[2 * i + 1];
+				kept++;
+			}
+		}
+		return Arrays.copyOf(dominant, 2 * kept);
+	}
+
+	// the expression of DPHScorer.getDPHScore with totalDocs / ctf as termConstant
+	private static double score(double termConstant, double averageLength, int termFrequency, int documentLength) {
+		double tf = termFrequency;
+		double f = WeightingModelLibrary.relativeFrequency(tf, documentLength);
+		double norm = (1d - f) * (1d - f) / (tf + 1d);
+		return norm * (tf * WeightingModelLibrary.log((tf * averageLength / documentLength) * termConstant)
+				+ 0.5d * WeightingModelLibrary.log(2d * Math.PI * tf * (1d - f)));
+	}
+}
@@ -0,0 +1,90 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.storage.StorageLevel;
+
+/**
+ * Selects how the intermediate types of the pipeline (NewsArticleInfo,
+ * ArticleTermFreqDict, DocumentRanking, Query ...) are encoded within Datasets.
+ * 
+ * The encoding is configured with the BIGDATA_ENCODER environment variable:
+ * <ul>
+ * <li>bean (default) - Encoders.bean, one column per bean property</li>
+ * <li>kryo - Encoders.kryo, a single binary column written by Kryo with the
+ * classes and serializers registered in PipelineKryoRegistrator</li>
+ * </ul>
+ * 
+ * Kryo encoded Datasets cannot be addressed by column, so only Datasets that are
+ * processed with typed functions should use these encoders.
+ * 
+ * Datasets of the pipeline that are used by more than one action are persisted
+ * at the storage level named by the BIGDATA_STORAGE_LEVEL environment variable
+ * (a StorageLevel name such as MEMORY_ONLY or DISK_ONLY, default
+ * MEMORY_AND_DISK).
+ */
+public class PipelineEncoders {
+
+	public static final String BEAN = "bean";
+	public static final String KRYO = "kryo";
+
+	/**
+	 * @return the configured encoding, BEAN unless BIGDATA_ENCODER says otherwise
+	 */
+	public static String encoding() {
+		String encoding = System.getenv("BIGDATA_ENCODER");
+		if (encoding == null)
+			return BEAN;
+		return encoding.toLowerCase();
+	}
+
+	/**
+	 * @return the configured storage level of persisted Datasets
+	 */
+	public static StorageLevel storageLevel() {
+		String level = System.getenv("BIGDATA_STORAGE_LEVEL");
+		if (level == null)
+			return StorageLevel.MEMORY_AND_DISK();
+		return StorageLevel.fromString(level.toUpperCase());
+	}
+
+	/**
+	 * @param type
+	 * @return encoder for the given type using the configured encoding
+	 */
+	public static <T> Encoder<T> forClass(Class<T> type) {
+		return forClass(type, encoding());
+	}
+
+	/**
+	 * @param type
+	 * @param encoding - BEAN or KRYO
+	 * @return encoder for the given type using the given encoding
+	 */
+	public static <T> Encoder<T> forClass(Class<T> type, String encoding) {
+		if (KRYO.equals(encoding))
+			return Encoders.kryo(type);
+		if (BEAN.equals(encoding))
+			return Encoders.bean(type);
+		throw new IllegalArgumentException("Unknown encoding " + encoding + ", expected " + BEAN + " or " + KRYO);
+	}
+
+	/**
+	 * Switches Spark to Kryo serialization with the pipeline registrator, so that
+	 * broadcasts and shuffles of the pipeline types share the Kryo encoding.
+	 * Called on the configuration before the session is created, and only has an
+	 * effect when the configured encoding is KRYO.
+	 * 
+	 * @param conf
+	 * @return the configuration
+	 */
+	public static SparkConf configure(SparkConf conf) {
+		if (KRYO.equals(encoding())) {
+			conf.set("spark.serializer", KryoSerializer.class.getName());
+			conf.set("spark.kryo.registrator", PipelineKryoRegistrator.class.getName());
+		}
+		return conf;
+	}
+}
@@ -0,0 +1,95 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.apache.spark.serializer.KryoRegistrator;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.ContentItem;
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.NewsArticle;
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.CorpusTermStatistics;
+import uk.ac.gla.dcs.bigdata.studentstructures.NewsArticleInfo;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryRanking;
+import uk.ac.gla.dcs.bigdata.studentstructures.QueryTermIndex;
+import uk.ac.gla.dcs.bigdata.studentstructures.RankedDocument;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermDictionary;
+import uk.ac.gla.dcs.bigdata.studentstructures.TermFrequencyMap;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitleBand;
+import uk.ac.gla.dcs.bigdata.studentstructures.TitlePair;
+
+/**
+ * Registers the pipeline types with Kryo, so that each object is written with a
+ * small class id instead of its class name. TermFrequencyMap gets a dedicated
+ * serializer which writes only the occupied slots as variable length ints.
+ */
+public class PipelineKryoRegistrator implements KryoRegistrator {
+
+	@Override
+	public void registerClasses(Kryo kryo) {
+		kryo.register(ArrayList.class);
+		kryo.register(HashMap.class);
+		kryo.register(HashSet.class);
+		kryo.register(short[].class);
+		kryo.register(int[].class);
+		kryo.register(long[].class);
+		kryo.register(int[][].class);
+
+		kryo.register(ContentItem.class);
+		kryo.register(NewsArticle.class);
+		kryo.register(Query.class);
+		kryo.register(RankedResult.class);
+		kryo.register(DocumentRanking.class);
+
+		kryo.register(NewsArticleInfo.class);
+		kryo.register(ArticleTermFreqDict.class);
+		kryo.register(CorpusStatistics.class);
+		kryo.register(CorpusTermStatistics.class);
+		kryo.register(TermDictionary.class);
+		kryo.register(RankedDocument.class);
+		kryo.register(QueryRanking.class);
+		kryo.register(QueryTermIndex.class);
+		kryo.register(TitleBand.class);
+		kryo.register(TitlePair.class);
+		kryo.register(TermFrequencyMap.class, new TermFrequencyMapSerializer());
+	}
+
+	/**
+	 * Writes a TermFrequencyMap as its size followed by the <term id, frequency>
+	 * pairs, skipping the empty slots of the open addressing table.
+	 */
+	public static class TermFrequencyMapSerializer extends Serializer<TermFrequencyMap> {
+
+		@Override
+		public void write(Kryo kryo, Output output, TermFrequencyMap map) {
+			int[] keys = map.getKeys();
+			int[] values = map.getValues();
+			output.writeVarInt(map.getSize(), true);
+			for (int slot = 0; slot < keys.length; slot++) {
+				if (keys[slot] >= 0) {
+					output.writeVarInt(keys[slot], true);
+					output.writeVarInt(values[slot], true);
+				}
+			}
+		}
+
+		@Override
+		public TermFrequencyMap read(Kryo kryo, Input input, Class<TermFrequencyMap> type) {
+			int size = input.readVarInt(true);
+			TermFrequencyMap map = new TermFrequencyMap(size);
+			for (int i = 0; i < size; i++)
+				map.add(input.readVarInt(true), input.readVarInt(true));
+			return map;
+		}
+	}
+}
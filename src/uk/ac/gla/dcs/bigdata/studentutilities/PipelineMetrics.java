@@ -0,0 +1,154 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.util.LongAccumulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Run metrics of the pipeline: named accumulators for the domain counters, and
+ * a StageMetricsListener for the per-stage metrics. The accumulators are
+ * updated by the functions the metrics are passed to, and everything is written
+ * as a Json report at the end of the run.
+ * 
+ * The metrics are registered once per SparkContext, forContext returns the same
+ * instance to every part of the driver code.
+ */
+public class PipelineMetrics implements Serializable {
+
+	private static final long serialVersionUID = -1817035402557313594L;
+
+	public static final String NULL_TITLE_ARTICLES = "nullTitleArticles";
+	public static final String SCORED_PAIRS = "scoredPairs";
+	public static final String PRUNED_PAIRS = "prunedPairs";
+	public static final String DPH_CLAMPS = "dphClamps";
+	public static final String TITLE_COMPARISONS = "titleComparisons";
+
+	private static final Map<SparkContext, PipelineMetrics> registered = new WeakHashMap<SparkContext, PipelineMetrics>();
+
+	LongAccumulator nullTitleArticles; // articles dropped for a null title, again if the parse is recomputed
+	LongAccumulator scoredPairs; // <query, article> pairs scored with DPH
+	LongAccumulator prunedPairs; // <query, article> pairs skipped by dynamic pruning
+	LongAccumulator dphClamps; // DPH scores that were NaN or infinite and set to 0
+	LongAccumulator titleComparisons; // Levenshtein distance calculations between titles
+
+	private transient StageMetricsListener stages;
+
+	private PipelineMetrics(SparkContext sc) {
+		this.nullTitleArticles = sc.longAccumulator(NULL_TITLE_ARTICLES);
+		this.scoredPairs = sc.longAccumulator(SCORED_PAIRS);
+		this.prunedPairs = sc.longAccumulator(PRUNED_PAIRS);
+		this.dphClamps = sc.longAccumulator(DPH_CLAMPS);
+		this.titleComparisons = sc.longAccumulator(TITLE_COMPARISONS);
+		this.stages = new StageMetricsListener();
+		sc.addSparkListener(stages);
+	}
+
+	/**
+	 * @param sc
+	 * @return the metrics of the context, registered on first use
+	 */
+	public static synchronized PipelineMetrics forContext(SparkContext sc) {
+		PipelineMetrics metrics = registered.get(sc);
+		if (metrics == null) {
+			metrics = new PipelineMetrics(sc);
+			registered.put(sc, metrics);
+		}
+		return metrics;
+	}
+
+	public void addNullTitleArticles(long articles) {
+		nullTitleArticles.add(articles);
+	}
+
+	public void addScoredPairs(long pairs) {
+		scoredPairs.add(pairs);
+	}
+
+	public void addPrunedPairs(long pairs) {
+		prunedPairs.add(pairs);
+	}
+
+	public void addDphClamps(long clamps) {
+		dphClamps.add(clamps);
+	}
+
+	public void addTitleComparisons(long comparisons) {
+		titleComparisons.add(comparisons);
+	}
+
+	/**
+	 * Builds the report of the run. Must be called on the driver, before the
+	 * SparkContext is stopped so that all stage events have been delivered.
+	 * 
+	 * @param sc
+	 * @param startMillis - start time of the run
+	 * @return
+	 * @throws TimeoutException if the pending events are not delivered in time
+	 */
+	public Map<String, Object> report(SparkContext sc, long startMillis) throws TimeoutException {
+		awaitListeners(sc);
+
+		Map<String, Object> counters = new LinkedHashMap<String, Object>();
+		counters.put(NULL_TITLE_ARTICLES, nullTitleArticles.value());
+		counters.put(SCORED_PAIRS, scoredPairs.value());
+		counters.put(PRUNED_PAIRS, prunedPairs.value());
+		counters.put(DPH_CLAMPS, dphClamps.value());
+		counters.put(TITLE_COMPARISONS, titleComparisons.value());
+
+		// the term cache of the driver JVM, which runs every task in local mode only,
+		// and is not created for the counters if no text was pre-processed
+		SharedTextPreProcessor processor = SharedTextPreProcessor.current();
+		Map<String, Object> termCache = null;
+		if (sc.isLocal() && processor != null) {
+			termCache = new LinkedHashMap<String, Object>();
+			termCache.put("size", processor.getSize());
+			termCache.put("hits", processor.getHits());
+			termCache.put("misses", processor.getMisses());
+		}
+
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("application", sc.appName());
+		report.put("master", sc.master());
+		report.put("startTime", startMillis);
+		report.put("elapsedMs", System.currentTimeMillis() - startMillis);
+		report.put("counters", counters);
+		if (termCache != null)
+			report.put("termCache", termCache);
+		report.put("stages", stages.getStages());
+		return report;
+	}
+
+	/**
+	 * Waits until the listeners of the context have received every event posted
+	 * so far, e.g. the end of the stages of the last action.
+	 * 
+	 * Spark has no public API for this: the listener bus is private[spark], and
+	 * only callable from Java because Scala compiles package-private members as
+	 * public. It is kept in this one place so that a Spark upgrade which changes
+	 * it only breaks here.
+	 * 
+	 * @param sc
+	 * @throws TimeoutException if the pending events are not delivered in time
+	 */
+	public static void awaitListeners(SparkContext sc) throws TimeoutException {
+		sc.listenerBus().waitUntilEmpty();
+	}
+
+	/**
+	 * @param report
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void writeReport(Map<String, Object> report, File file) throws IOException {
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+	}
+}
@@ -0,0 +1,97 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.spark.Partitioner;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.Query;
+import uk.ac.gla.dcs.bigdata.studentstructures.ArticleTermFreqDict;
+
+/**
+ * Partitioner for the shuffle of the rankings, keyed by the dense query ids
+ * (positions in the ranked query list). Hashing a handful of query ids over the
+ * default number of shuffle partitions leaves most reduce tasks empty and can
+ * put several broad queries on the same one, so the queries are instead
+ * assigned up front by their expected number of candidates.
+ *
+ * The weight of a query is the corpus frequency of its terms, as the articles
+ * containing them are the ones it ranks. Queries are placed from the heaviest
+ * to the lightest on the least loaded partition, so a hot query gets a reducer
+ * of its own and the others are spread evenly over the rest.
+ */
+public class QueryPartitioner extends Partitioner {
+
+	private static final long serialVersionUID = 4412868106532398215L;
+
+	private final int partitions;
+	private final int[] queryPartitions; // partition of each query id
+
+	/**
+	 * @param queryPartitions - partition of each query id
+	 * @param partitions      - number of partitions
+	 */
+	public QueryPartitioner(int[] queryPartitions, int partitions) {
+		this.queryPartitions = queryPartitions;
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @param queryList      - queries, indexed by their id
+	 * @param corpusTermDict - term frequencies within the corpus
+	 * @param maxPartitions  - upper limit on the number of partitions
+	 * @return a partitioner balancing the expected candidates of the queries
+	 */
+	public static QueryPartitioner balanced(List<Query> queryList, ArticleTermFreqDict corpusTermDict,
+			int maxPartitions) {
+		int partitions = Math.max(1, Math.min(queryList.size(), maxPartitions));
+
+		long[] weights = new long[queryList.size()];
+		Integer[] order = new Integer[queryList.size()];
+		for (int queryId = 0; queryId < weights.length; queryId++) {
+			// every query has at least its own record to reduce
+			long weight = 1;
+			for (String term : queryList.get(queryId).getQueryTerms())
+				weight += corpusTermDict.getTermFreqdict().getOrDefault(term, (long) 0);
+			weights[queryId] = weight;
+			order[queryId] = queryId;
+		}
+		// heaviest first, by id for equal weights
+		Arrays.sort(order, (q1, q2) -> weights[q1] != weights[q2] ? Long.compare(weights[q2], weights[q1])
+				: Integer.compare(q1, q2));
+
+		long[] loads = new long[partitions];
+		int[] queryPartitions = new int[weights.length];
+		for (int queryId : order) {
+			int lightest = 0;
+			for (int partition = 1; partition < partitions; partition++) {
+				if (loads[partition] < loads[lightest])
+					lightest = partition;
+			}
+			queryPartitions[queryId] = lightest;
+			loads[lightest] += weights[queryId];
+		}
+		return new QueryPartitioner(queryPartitions, partitions);
+	}
+
+	@Override
+	public int numPartitions() {
+		return partitions;
+	}
+
+	@Override
+	public int getPartition(Object key) {
+		return queryPartitions[(Integer) key];
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof QueryPartitioner && partitions == ((QueryPartitioner) other).partitions
+				&& Arrays.equals(queryPartitions, ((QueryPartitioner) other).queryPartitions);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * partitions + Arrays.hashCode(queryPartitions);
+	}
+}
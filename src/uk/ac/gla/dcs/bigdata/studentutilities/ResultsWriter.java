@@ -0,0 +1,149 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import uk.ac.gla.dcs.bigdata.providedstructures.DocumentRanking;
+import uk.ac.gla.dcs.bigdata.providedstructures.RankedResult;
+
+/**
+ * Writes the final rankings to the results directory, in the formats selected
+ * by the BIGDATA_RESULTS_FORMAT environment variable:
+ * <ul>
+ * <li>files (default) - one file per query, named by the query text with
+ * spaces replaced by underscores and holding DocumentRanking.toString(), the
+ * same files as DocumentRanking.write</li>
+ * <li>trec - a single run file, RUN_FILE, with one line per ranked article:
+ * "qid Q0 docid rank score tag", the qid being the per-query file name</li>
+ * <li>both - the run file and the per-query files</li>
+ * </ul>
+ * With BIGDATA_RESULTS_COMPRESSION=gzip the run file is written compressed, as
+ * RUN_FILE.gz.
+ *
+ * The rankings are formatted in batches of BATCH_SIZE queries on the cores of
+ * the driver, each batch compressed separately: a sequence of gzip members is
+ * itself a valid gzip file, so the batches are simply written one after the
+ * other in a single write. Per-query files are written in parallel as well.
+ * Unlike DocumentRanking.write, a file that cannot be written fails the write
+ * with its IOException.
+ */
+public class ResultsWriter {
+
+	public static final String FILES = "files";
+	public static final String TREC = "trec";
+	public static final String BOTH = "both";
+	public static final String GZIP = "gzip";
+
+	public static final String RUN_FILE = "run.trec";
+	public static final String RUN_TAG = "BigDataAE";
+
+	static final int BATCH_SIZE = 256; // queries formatted (and compressed) together
+
+	private final boolean queryFiles;
+	private final boolean runFile;
+	private final boolean compressed;
+
+	/**
+	 * @param queryFiles - whether to write one file per query
+	 * @param runFile    - whether to write the TREC run file
+	 * @param compressed - whether to gzip the run file
+	 */
+	public ResultsWriter(boolean queryFiles, boolean runFile, boolean compressed) {
+		this.queryFiles = queryFiles;
+		this.runFile = runFile;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * @return a writer for the formats of BIGDATA_RESULTS_FORMAT and
+	 *         BIGDATA_RESULTS_COMPRESSION
+	 */
+	public static ResultsWriter fromEnvironment() {
+		String format = System.getenv("BIGDATA_RESULTS_FORMAT");
+		if (format == null)
+			format = FILES;
+		format = format.toLowerCase();
+		return new ResultsWriter(FILES.equals(format) || BOTH.equals(format),
+				TREC.equals(format) || BOTH.equals(format),
+				GZIP.equalsIgnoreCase(System.getenv("BIGDATA_RESULTS_COMPRESSION")));
+	}
+
+	/**
+	 * @param results   - top 10 articles for each query
+	 * @param directory - results directory, created if needed
+	 * @throws IOException
+	 */
+	public void write(List<DocumentRanking> results, File directory) throws IOException {
+		directory.mkdirs();
+		try {
+			if (runFile)
+				writeRunFile(results, new File(directory, compressed ? RUN_FILE + ".gz" : RUN_FILE));
+			if (queryFiles) {
+				results.parallelStream().forEach(ranking -> {
+					try {
+						// DocumentRanking.write uses the default charset as well
+						Files.write(new File(directory, queryId(ranking)).toPath(),
+								ranking.toString().getBytes(Charset.defaultCharset()));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeRunFile(List<DocumentRanking> results, File file) throws IOException {
+		int batches = (results.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+		List<byte[]> chunks = new ArrayList<byte[]>(batches);
+		IntStream.range(0, batches).parallel()
+				.mapToObj(batch -> format(results.subList(batch * BATCH_SIZE,
+						Math.min(results.size(), (batch + 1) * BATCH_SIZE))))
+				.forEachOrdered(chunks::add);
+
+		try (OutputStream out = Files.newOutputStream(file.toPath())) {
+			for (byte[] chunk : chunks)
+				out.write(chunk);
+		}
+	}
+
+	// the run file lines of a batch of rankings, compressed as one gzip member if needed
+	private byte[] format(List<DocumentRanking> batch) {
+		StringBuilder builder = new StringBuilder();
+		for (DocumentRanking ranking : batch) {
+			String qid = queryId(ranking);
+			int rank = 1;
+			for (RankedResult result : ranking.getResults()) {
+				builder.append(qid).append(" Q0 ").append(result.getDocid()).append(' ').append(rank++).append(' ')
+						.append(result.getScore()).append(' ').append(RUN_TAG).append('\n');
+			}
+		}
+		byte[] lines = builder.toString().getBytes(StandardCharsets.UTF_8);
+		if (!compressed)
+			return lines;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(lines.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(lines);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// the per-query file name, also used as TREC query id as it holds no spaces
+	private static String queryId(DocumentRanking ranking) {
+		return ranking.getQuery().getOriginalQuery().replace(" ", "_");
+	}
+}
@@ -0,0 +1,156 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.terrier.indexing.tokenisation.Tokeniser;
+import org.terrier.terms.BaseTermPipelineAccessor;
+
+/**
+ * JVM-wide text pre-processor with the same output as TextPreProcessor, shared
+ * by all tasks running in an executor.
+ * 
+ * News vocabulary is highly repetitive, so the result of the stopword removal
+ * and stemming pipeline is memoized per token in a concurrent map. Only misses
+ * go through the Terrier pipeline, which is not thread-safe, so each task
+ * thread has its own (as for the tokeniser) and misses are never serialized.
+ * The cache is bounded: once it holds the maximum number of tokens
+ * (BIGDATA_TERM_CACHE_SIZE, default 1,000,000) new tokens are processed but no
+ * longer added, which keeps the frequent tokens seen first.
+ */
+public class SharedTextPreProcessor {
+
+	private static final String STOPWORD = new String("\u0000"); // cached marker for tokens removed by the pipeline
+	private static final int DEFAULT_CACHE_SIZE = 1000000;
+
+	private static volatile SharedTextPreProcessor instance;
+
+	private final ThreadLocal<BaseTermPipelineAccessor> termProcessingPipeline = ThreadLocal
+			.withInitial(() -> new BaseTermPipelineAccessor("Stopwords", "PorterStemmer"));
+	private final ThreadLocal<Tokeniser> tokeniser = ThreadLocal.withInitial(Tokeniser::getTokeniser);
+	private final ConcurrentHashMap<String, String> processedTerms;
+	private final int maximumSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private SharedTextPreProcessor(int maximumSize) {
+		this.processedTerms = new ConcurrentHashMap<String, String>(Math.min(maximumSize, 1 << 16));
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @return the pre-processor of this JVM
+	 */
+	public static SharedTextPreProcessor get() {
+		SharedTextPreProcessor processor = instance;
+		if (processor == null) {
+			synchronized (SharedTextPreProcessor.class) {
+				processor = instance;
+				if (processor == null) {
+					processor = new SharedTextPreProcessor(cacheSize());
+					instance = processor;
+				}
+			}
+		}
+		return processor;
+	}
+
+	/**
+	 * @return the pre-processor of this JVM if it was created, null otherwise (for
+	 *         reading its counters without building the pipeline)
+	 */
+	public static SharedTextPreProcessor current() {
+		return instance;
+	}
+
+	/**
+	 * @return the maximum number of cached tokens, from BIGDATA_TERM_CACHE_SIZE
+	 * @throws IllegalArgumentException if it is not a non-negative integer
+	 */
+	public static int cacheSize() {
+		String size = System.getenv("BIGDATA_TERM_CACHE_SIZE");
+		if (size == null)
+			return DEFAULT_CACHE_SIZE;
+		try {
+			int cacheSize = Integer.parseInt(size.trim());
+			if (cacheSize >= 0)
+				return cacheSize;
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(
+				"Invalid BIGDATA_TERM_CACHE_SIZE " + size + ", expected a non-negative number of tokens");
+	}
+
+	/**
+	 * Returns an array of processed terms for an input text string
+	 * 
+	 * @param text
+	 * @return
+	 */
+	public List<String> process(String text) {
+		String[] inputTokens = tokeniser.get().getTokens(text);
+
+		if (inputTokens == null)
+			return new ArrayList<String>(0);
+
+		List<String> outTokens = new ArrayList<String>(inputTokens.length);
+		for (int i = 0; i < inputTokens.length; i++) {
+			String processedTerm = pipelineTerm(inputTokens[i]);
+			if (processedTerm == null)
+				continue;
+			outTokens.add(processedTerm);
+		}
+
+		return outTokens;
+	}
+
+	/**
+	 * @param token
+	 * @return the stemmed token, or null if it is a stopword
+	 */
+	public String pipelineTerm(String token) {
+		String processedTerm = processedTerms.get(token);
+		if (processedTerm != null) {
+			hits.increment();
+			return processedTerm == STOPWORD ? null : processedTerm;
+		}
+
+		misses.increment();
+		processedTerm = termProcessingPipeline.get().pipelineTerm(token);
+		if (processedTerms.size() < maximumSize)
+			processedTerms.putIfAbsent(token, processedTerm == null ? STOPWORD : processedTerm);
+		return processedTerm;
+	}
+
+	/**
+	 * @return number of tokens answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of tokens that went through the pipeline
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of cached tokens
+	 */
+	public int getSize() {
+		return processedTerms.size();
+	}
+
+	@Override
+	public String toString() {
+		long lookups = getHits() + getMisses();
+		return String.format("term cache: %d tokens cached, %d hits, %d misses (%.1f%% hit rate)", getSize(), getHits(),
+				getMisses(), lookups == 0 ? 0.0 : 100.0 * getHits() / lookups);
+	}
+}
@@ -0,0 +1,59 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.StageInfo;
+
+/**
+ * SparkListener recording the wall time, records in and out and shuffle bytes
+ * of every completed stage. Records in are those read from the input and the
+ * shuffle, records out those written to the output and the shuffle.
+ */
+public class StageMetricsListener extends SparkListener {
+
+	private final List<Map<String, Object>> stages = new ArrayList<Map<String, Object>>();
+
+	@Override
+	public void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+		StageInfo stage = stageCompleted.stageInfo();
+
+		Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+		metrics.put("stageId", stage.stageId());
+		metrics.put("attempt", stage.attemptNumber());
+		metrics.put("name", stage.name());
+		metrics.put("tasks", stage.numTasks());
+		if (stage.submissionTime().isDefined() && stage.completionTime().isDefined())
+			metrics.put("wallMs", (Long) stage.completionTime().get() - (Long) stage.submissionTime().get());
+		if (stage.failureReason().isDefined())
+			metrics.put("failure", stage.failureReason().get());
+
+		TaskMetrics tasks = stage.taskMetrics();
+		if (tasks != null) {
+			metrics.put("executorRunMs", tasks.executorRunTime());
+			metrics.put("recordsIn", tasks.inputMetrics().recordsRead() + tasks.shuffleReadMetrics().recordsRead());
+			metrics.put("recordsOut", tasks.outputMetrics().recordsWritten() + tasks.shuffleWriteMetrics().recordsWritten());
+			metrics.put("inputBytes", tasks.inputMetrics().bytesRead());
+			metrics.put("shuffleReadBytes", tasks.shuffleReadMetrics().totalBytesRead());
+			metrics.put("shuffleWriteBytes", tasks.shuffleWriteMetrics().bytesWritten());
+		}
+
+		synchronized (stages) {
+			stages.add(metrics);
+		}
+	}
+
+	/**
+	 * @return the metrics of the stages completed so far, in completion order
+	 */
+	public List<Map<String, Object>> getStages() {
+		synchronized (stages) {
+			return new ArrayList<Map<String, Object>>(stages);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package uk.ac.gla.dcs.bigdata.studentutilities;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.gla.dcs.bigdata.studentstructures.TitlePair;
+
+/**
+ * MinHash signatures and LSH banding of article titles, used to cluster
+ * near-duplicate titles once before ranking.
+ *
+ * A title is represented by its character shingles (substrings of
+ * SHINGLE_LENGTH characters), and its signature holds the minimum of
+ * BANDS * ROWS independent hash functions over them. Two titles share a band,
+ * i.e. ROWS consecutive signature values, with probability 1 - (1 - J^ROWS)^BANDS
+ * for a Jaccard similarity J of their shingles: about 0.87 at J = 0.5 and
+ * 0.99 at J = 0.65 with the values below. Titles sharing a band are only
+ * candidates, each pair is verified with TextDistanceCalculator before it joins
+ * a cluster, so two titles of one cluster are linked by a chain of exact
+ * near-duplicates. Near-duplicates whose shingles share too little to meet in
+ * a band are missed, which is the approximation of this method.
+ */
+public class TitleMinHash {
+
+	public static final int SHINGLE_LENGTH = 3; // characters per shingle
+	public static final int BANDS = 32; // number of bands of the signature
+	public static final int ROWS = 4; // signature values per band
+
+	private static final long[] SEEDS = new long[BANDS * ROWS];
+	static {
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int i = 0; i < SEEDS.length; i++) {
+			seed = mix(seed + 0x9E3779B97F4A7C15L);
+			SEEDS[i] = seed;
+		}
+	}
+
+	/**
+	 * @param title
+	 * @return the MinHash signature of the title, BANDS * ROWS values
+	 */
+	public static long[] signature(String title) {
+		long[] signature = new long[SEEDS.length];
+		Arrays.fill(signature, Long.MAX_VALUE);
+
+		String text = title == null ? "" : title;
+		int shingles = Math.max(1, text.length() - SHINGLE_LENGTH + 1);
+		for (int start = 0; start < shingles; start++) {
+			long shingle = 0;
+			for (int i = start; i < Math.min(text.length(), start + SHINGLE_LENGTH); i++)
+				shingle = (shingle << 16) | text.charAt(i);
+			for (int i = 0; i < SEEDS.length; i++) {
+				long hash = mix(shingle ^ SEEDS[i]);
+				if (hash < signature[i])
+					signature[i] = hash;
+			}
+		}
+		return signature;
+	}
+
+	/**
+	 * @param signature
+	 * @return the key of each band of the signature, distinct between bands
+	 */
+	public static long[] bandKeys(long[] signature) {
+		long[] keys = new long[BANDS];
+		for (int band = 0; band < BANDS; band++) {
+			long key = mix(band + 1);
+			for (int row = 0; row < ROWS; row++)
+				key = mix(key ^ signature[band * ROWS + row]);
+			keys[band] = key;
+		}
+		return keys;
+	}
+
+	/**
+	 * Groups the articles of verified near-duplicate pairs into clusters
+	 * (connected components of the pairs).
+	 *
+	 * @param pairs - near-duplicate article pairs
+	 * @return the cluster id of every article in a pair, numbered from 1
+	 */
+	public static Map<String, Integer> clusters(List<TitlePair> pairs) {
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		int[] parents = new int[16];
+		for (TitlePair pair : pairs) {
+			int[] nodes = new int[2];
+			String[] docids = { pair.getDocid1(), pair.getDocid2() };
+			for (int i = 0; i < 2; i++) {
+				Integer node = index.get(docids[i]);
+				if (node == null) {
+					node = index.size();
+					index.put(docids[i], node);
+					if (node == parents.length)
+						parents = Arrays.copyOf(parents, 2 * parents.length);
+					parents[node] = node;
+				}
+				nodes[i] = node;
+			}
+			int root1 = find(parents, nodes[0]), root2 = find(parents, nodes[1]);
+			if (root1 != root2)
+				parents[Math.max(root1, root2)] = Math.min(root1, root2);
+		}
+
+		// number the clusters by their first article
+		int[] clusterIds = new int[index.size()];
+		int clusters = 0;
+		Map<String, Integer> clusterOf = new HashMap<String, Integer>(2 * index.size());
+		for (int node = 0; node < index.size(); node++) {
+			int root = find(parents, node);
+			if (root == node)
+				clusterIds[node] = ++clusters;
+		}
+		for (Map.Entry<String, Integer> entry : index.entrySet())
+			clusterOf.put(entry.getKey(), clusterIds[find(parents, entry.getValue())]);
+		return clusterOf;
+	}
+
+	private static int find(int[] parents, int node) {
+		while (parents[node] != node) {
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	// 64 bit finaliser of MurmurHash3
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}